@@ -0,0 +1,163 @@
+
+package com.zapcom.customerservice.cache;
+
+import com.zapcom.customerservice.configuration.CacheProperties;
+import com.zapcom.customerservice.model.Customer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of customers by id, bounded by customers.cache.max-size and expiring entries
+ * after customers.cache.ttl. Writes through this service invalidate the customers they touch, so
+ * the TTL only bounds how long changes made elsewhere go unseen. Customers that do not exist are
+ * not cached.
+ */
+@Component
+public class CustomerCache implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(CustomerCache.class);
+
+    private static final String CACHE_NAME = "customers";
+
+    @Autowired
+    private CacheProperties properties;
+
+    private final Map<String, CachedCustomer> customers = new ConcurrentHashMap<>();
+
+    // Bumped by every invalidation, so a load that raced a write can tell and not cache what it read
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    public Optional<Customer> get(String id, Function<String, Optional<Customer>> loader) {
+        if (!properties.isEnabled()) {
+            return loader.apply(id);
+        }
+        long now = System.nanoTime();
+        CachedCustomer cached = customers.get(id);
+        if (cached != null && cached.isFresh(now)) {
+            hits.increment();
+            return Optional.of(cached.customer());
+        }
+        misses.increment();
+
+        long generation = invalidations.get();
+        Optional<Customer> customer;
+        try {
+            customer = loader.apply(id);
+        } finally {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - now);
+        }
+        customer.ifPresent(loaded -> put(id, loaded, generation));
+        return customer;
+    }
+
+    // To be called once the write has been made, whether or not it succeeded
+    public void invalidate(String id) {
+        invalidations.incrementAndGet();
+        if (customers.remove(id) != null) {
+            evictions.increment();
+        }
+    }
+
+    public void invalidate(Iterable<String> ids) {
+        invalidations.incrementAndGet();
+        for (String id : ids) {
+            if (customers.remove(id) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cache.size", customers, Map::size)
+            .tag("cache", CACHE_NAME)
+            .description("The number of cached customers")
+            .register(registry);
+
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "hit")
+            .register(registry);
+
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "miss")
+            .register(registry);
+
+        FunctionCounter.builder("cache.puts", puts, LongAdder::sum)
+            .tag("cache", CACHE_NAME)
+            .register(registry);
+
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+            .tag("cache", CACHE_NAME)
+            .register(registry);
+
+        FunctionTimer.builder("cache.load.duration", this, cache -> cache.loads.sum(),
+                cache -> cache.loadNanos.sum(), TimeUnit.NANOSECONDS)
+            .tag("cache", CACHE_NAME)
+            .description("Time spent reading customers from MongoDB on cache misses")
+            .register(registry);
+    }
+
+    private void put(String id, Customer customer, long generation) {
+        CachedCustomer entry = new CachedCustomer(customer, System.nanoTime() + properties.getTtl().toNanos());
+        customers.put(id, entry);
+        puts.increment();
+        // Checked after the put: an invalidation from here on removes the entry itself, one before
+        // it means the customer may have been read before the write landed
+        if (invalidations.get() != generation) {
+            customers.remove(id, entry);
+        }
+        if (customers.size() > properties.getMaxSize()) {
+            makeRoom();
+        }
+    }
+
+    private void makeRoom() {
+        long now = System.nanoTime();
+        // Trims a tenth below the limit so a full cache is not scanned again on every put
+        int target = properties.getMaxSize() - properties.getMaxSize() / 10;
+
+        // First the entries that have expired anyway, then anything until under the target
+        for (int pass = 0; pass < 2 && customers.size() > target; pass++) {
+            Iterator<Map.Entry<String, CachedCustomer>> iterator = customers.entrySet().iterator();
+            while (iterator.hasNext() && customers.size() > target) {
+                Map.Entry<String, CachedCustomer> entry = iterator.next();
+                if ((pass == 1 || !entry.getValue().isFresh(now)) && customers.remove(entry.getKey(), entry.getValue())) {
+                    evictions.increment();
+                }
+            }
+        }
+
+        logger.debug("Customer cache trimmed to {} entries", customers.size());
+    }
+
+    private record CachedCustomer(Customer customer, long expiresAt) {
+
+        boolean isFresh(long now) {
+            return now - expiresAt < 0;
+        }
+    }
+}
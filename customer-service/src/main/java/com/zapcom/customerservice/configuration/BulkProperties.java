@@ -0,0 +1,44 @@
+
+package com.zapcom.customerservice.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+@Component
+@ConfigurationProperties(prefix = "customers.bulk")
+public class BulkProperties {
+
+    // Operations sent to MongoDB in one unordered bulk write
+    private int chunkSize = 500;
+
+    // Larger batches are rejected with 413 before anything is written
+    private int maxOperations = 10_000;
+
+    // Checked against Content-Length before the body is read; requests without one get 411
+    private DataSize maxRequestSize = DataSize.ofMegabytes(5);
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getMaxOperations() {
+        return maxOperations;
+    }
+
+    public void setMaxOperations(int maxOperations) {
+        this.maxOperations = maxOperations;
+    }
+
+    public DataSize getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    public void setMaxRequestSize(DataSize maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+}
@@ -0,0 +1,40 @@
+
+package com.zapcom.customerservice.configuration;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Turns away bulk requests larger than customers.bulk.max-request-size. It runs before the
+ * handler's arguments are resolved, so an oversized body is never read into memory. Bodies of
+ * unknown length could be any size and are refused as well.
+ */
+@Component
+public class BulkRequestSizeInterceptor implements HandlerInterceptor {
+
+    @Autowired
+    private BulkProperties properties;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Other methods on the path are customer lookups by id
+        if (!HttpMethod.POST.matches(request.getMethod())) {
+            return true;
+        }
+        long length = request.getContentLengthLong();
+        if (length < 0) {
+            throw new ResponseStatusException(HttpStatus.LENGTH_REQUIRED, "Bulk requests need a Content-Length");
+        }
+        if (length > properties.getMaxRequestSize().toBytes()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Bulk requests are limited to " + properties.getMaxRequestSize().toBytes() + " bytes");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+
+package com.zapcom.customerservice.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "customers.cache")
+public class CacheProperties {
+
+    // When off, every lookup by id goes to MongoDB, for comparing the two under load
+    private boolean enabled = true;
+
+    // Upper bound for cached customers; past it expired entries go first, then any
+    private int maxSize = 10_000;
+
+    // Bounds how long a change made around this service, e.g. straight in MongoDB, stays unseen
+    private Duration ttl = Duration.ofMinutes(5);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+}
@@ -0,0 +1,22 @@
+
+package com.zapcom.customerservice.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "customers.export")
+public class ExportProperties {
+
+    // Documents MongoDB returns per cursor round trip; the response is flushed after each batch,
+    // so about this many customers are held in memory at a time however large the collection is
+    private int batchSize = 1000;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
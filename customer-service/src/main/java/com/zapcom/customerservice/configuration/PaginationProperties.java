@@ -0,0 +1,32 @@
+
+package com.zapcom.customerservice.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "customers.pagination")
+public class PaginationProperties {
+
+    // Page size when the request gives no limit
+    private int defaultPageSize = 50;
+
+    // Larger limits are cut down to this, so one request never loads more than this many documents
+    private int maxPageSize = 500;
+
+    public int getDefaultPageSize() {
+        return defaultPageSize;
+    }
+
+    public void setDefaultPageSize(int defaultPageSize) {
+        this.defaultPageSize = defaultPageSize;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+}
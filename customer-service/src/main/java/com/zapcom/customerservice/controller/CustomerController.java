@@ -1,27 +1,56 @@
 
 package com.zapcom.customerservice.controller;
 
+import com.zapcom.customerservice.model.BulkOperation;
+import com.zapcom.customerservice.model.BulkResult;
 import com.zapcom.customerservice.model.Customer;
+import com.zapcom.customerservice.model.CustomerPage;
 import com.zapcom.customerservice.service.CustomerService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/customers")
 public class CustomerController {
 
+    // Continuation token for the next page of a listing, absent on the last page
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private CustomerService customerService;
 
+    // A page at a time: pass the X-Next-Cursor of one response as ?cursor= to get the next page
     @GetMapping
     public ResponseEntity<List<Customer>> getAllCustomers(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String sort,
             @RequestHeader("X-User-Id") String userId,
             @RequestHeader("X-User-Role") String userRole) {
-        return ResponseEntity.ok(customerService.getAllCustomers());
+        CustomerPage page = customerService.getCustomers(cursor, limit, sort);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getCustomers());
+    }
+
+    // Every customer, one JSON document per line, streamed as it is read for bulk consumers such as
+    // sync jobs. Written from an MVC async thread, see spring.mvc.async.request-timeout.
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCustomers(
+            @RequestHeader("X-User-Id") String userId,
+            @RequestHeader("X-User-Role") String userRole) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(customerService::exportCustomers);
     }
 
     @GetMapping("/{id}")
@@ -43,6 +72,16 @@ public class CustomerController {
         return ResponseEntity.status(HttpStatus.CREATED).body(createdCustomer);
     }
 
+    // Inserts, updates and deletes in one request, answered with a result per operation. The
+    // request size is limited by BulkRequestSizeInterceptor before the body is read.
+    @PostMapping("/bulk")
+    public ResponseEntity<List<BulkResult>> bulkWrite(
+            @RequestBody List<BulkOperation> operations,
+            @RequestHeader("X-User-Id") String userId,
+            @RequestHeader("X-User-Role") String userRole) {
+        return ResponseEntity.ok(customerService.bulkWrite(operations));
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<Customer> updateCustomer(
             @PathVariable String id,
@@ -53,6 +92,17 @@ public class CustomerController {
         return ResponseEntity.ok(customerService.updateCustomer(customer));
     }
 
+    // Only the fields in the body, e.g. {"email": "..."}; null clears a field. Like a PUT, a
+    // "version" taken from an earlier read makes the write fail with 409 if the customer has changed.
+    @PatchMapping("/{id}")
+    public ResponseEntity<Customer> patchCustomer(
+            @PathVariable String id,
+            @RequestBody Map<String, Object> patch,
+            @RequestHeader("X-User-Id") String userId,
+            @RequestHeader("X-User-Role") String userRole) {
+        return ResponseEntity.ok(customerService.patchCustomer(id, patch));
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteCustomer(
             @PathVariable String id,
@@ -0,0 +1,43 @@
+
+package com.zapcom.customerservice.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// One entry of a POST /customers/bulk batch: {"type": "insert", "customer": {...}},
+// {"type": "update", "id": "...", "customer": {...}} or {"type": "delete", "id": "..."}
+public class BulkOperation {
+
+    public enum Type {
+        @JsonProperty("insert") INSERT,
+        @JsonProperty("update") UPDATE,
+        @JsonProperty("delete") DELETE
+    }
+
+    private Type type;
+    private String id;
+    private Customer customer;
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(Customer customer) {
+        this.customer = customer;
+    }
+}
@@ -0,0 +1,38 @@
+
+package com.zapcom.customerservice.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Outcome of one bulk operation, in the position of the operation in the request. The status is
+// the one the single-item endpoint would have answered with: 201, 200 or 204 on success, 400,
+// 404 or 409 when the operation was rejected.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkResult {
+    private final int index;
+    private final int status;
+    private final String id;
+    private final String error;
+
+    public BulkResult(int index, int status, String id, String error) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
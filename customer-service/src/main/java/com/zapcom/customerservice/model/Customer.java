@@ -2,9 +2,17 @@
 package com.zapcom.customerservice.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+// Keyset pagination walks these when listing by name or email, _id breaking ties
 @Document(collection = "customers")
+@CompoundIndexes({
+        @CompoundIndex(name = "name_id", def = "{'name': 1, '_id': 1}"),
+        @CompoundIndex(name = "email_id", def = "{'email': 1, '_id': 1}")
+})
 public class Customer {
     @Id
     private String id;
@@ -12,6 +20,10 @@ public class Customer {
     private String email;
     private String phone;
     private String address;
+    // Bumped by every write; a PUT or PATCH carrying it only applies while the customer is unchanged.
+    // Customers stored before versioning have none until their next write.
+    @Version
+    private Long version;
 
     public Customer() {
     }
@@ -62,4 +74,12 @@ public class Customer {
     public void setAddress(String address) {
         this.address = address;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,23 @@
+
+package com.zapcom.customerservice.model;
+
+import java.util.List;
+
+public class CustomerPage {
+    private final List<Customer> customers;
+    // Continuation token for the page after this one, null on the last page
+    private final String nextCursor;
+
+    public CustomerPage(List<Customer> customers, String nextCursor) {
+        this.customers = customers;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Customer> getCustomers() {
+        return customers;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,39 @@
+
+package com.zapcom.customerservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Where the next page starts: the sort the listing runs in and the sort value and id of the last
+ * customer handed out. Clients get it as an opaque base64url token and pass it back unchanged.
+ */
+record CustomerCursor(String sort, boolean descending, String value, String id) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(this));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode cursor", e);
+        }
+    }
+
+    static CustomerCursor decode(String token) {
+        try {
+            CustomerCursor cursor = MAPPER.readValue(Base64.getUrlDecoder().decode(token), CustomerCursor.class);
+            if (cursor.sort() == null || cursor.id() == null) {
+                throw new IllegalArgumentException("Incomplete cursor");
+            }
+            return cursor;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
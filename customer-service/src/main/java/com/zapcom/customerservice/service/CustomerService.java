@@ -1,45 +1,539 @@
 
 package com.zapcom.customerservice.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.zapcom.customerservice.cache.CustomerCache;
+import com.zapcom.customerservice.configuration.BulkProperties;
+import com.zapcom.customerservice.configuration.ExportProperties;
+import com.zapcom.customerservice.configuration.PaginationProperties;
+import com.zapcom.customerservice.model.BulkOperation;
+import com.zapcom.customerservice.model.BulkResult;
 import com.zapcom.customerservice.model.Customer;
+import com.zapcom.customerservice.model.CustomerPage;
 import com.zapcom.customerservice.repository.CustomerRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.PropertyAccessorFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.SetOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 public class CustomerService {
 
+    // MongoDB's duplicate key error, e.g. an insert with the id of an existing customer
+    private static final int DUPLICATE_KEY = 11000;
+
+    // Fields a PUT replaces and a PATCH may set; id and version are never written directly
+    private static final Set<String> WRITABLE_FIELDS = Set.of("name", "email", "phone", "address");
+
     @Autowired
     private CustomerRepository customerRepository;
 
-    public List<Customer> getAllCustomers() {
-        return customerRepository.findAll();
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CustomerCache customerCache;
+
+    @Autowired
+    private PaginationProperties pagination;
+
+    @Autowired
+    private ExportProperties export;
+
+    @Autowired
+    private BulkProperties bulk;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // One page of customers in the given sort ("name" or "name,desc"; by id when absent), starting
+    // after the cursor from the previous page. Reads at most limit + 1 documents, the extra one
+    // only telling whether there is a next page, so memory use does not grow with the collection.
+    public CustomerPage getCustomers(String cursor, Integer limit, String sort) {
+        CustomerCursor after = cursor != null ? CustomerCursor.decode(cursor) : null;
+        CustomerSort order = CustomerSort.ID;
+        boolean descending = false;
+        if (sort != null) {
+            String[] parts = sort.split(",");
+            order = CustomerSort.of(parts[0].trim());
+            descending = descending(parts);
+        }
+        if (after != null) {
+            CustomerSort cursorOrder = CustomerSort.of(after.sort());
+            if (sort != null && (order != cursorOrder || descending != after.descending())) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The cursor belongs to a listing in another sort order");
+            }
+            order = cursorOrder;
+            descending = after.descending();
+        }
+        int pageSize = pageSize(limit);
+
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Query query = new Query()
+                .with(order == CustomerSort.ID ? Sort.by(direction, "id") : Sort.by(direction, order.getField(), "id"))
+                .limit(pageSize + 1);
+        if (after != null) {
+            query.addCriteria(after(order, descending, after));
+        }
+        List<Customer> customers = mongoTemplate.find(query, Customer.class);
+
+        String nextCursor = null;
+        if (customers.size() > pageSize) {
+            customers.remove(pageSize);
+            Customer last = customers.get(pageSize - 1);
+            String value = order == CustomerSort.ID ? null : order.valueOf(last);
+            nextCursor = new CustomerCursor(order.getField(), descending, value, last.getId()).encode();
+        }
+        return new CustomerPage(customers, nextCursor);
+    }
+
+    // Every customer in _id order as newline-delimited JSON, written while the cursor is read a batch
+    // at a time. Writes block while the client is behind, which holds back the next getMore, so
+    // memory use stays at about one batch however many customers there are.
+    public void exportCustomers(OutputStream out) throws IOException {
+        Query query = new Query()
+                .with(Sort.by("id"))
+                .cursorBatchSize(export.getBatchSize());
+        // Flushing is done per batch rather than per document
+        ObjectWriter writer = objectMapper.writerFor(Customer.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (Stream<Customer> customers = mongoTemplate.stream(query, Customer.class);
+             // The servlet container closes the response itself
+             JsonGenerator generator = objectMapper.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.setRootValueSeparator(null);
+            long written = 0;
+            Iterator<Customer> iterator = customers.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+                if (++written % export.getBatchSize() == 0) {
+                    generator.flush();
+                }
+            }
+        }
+    }
+
+    // Applies the operations as unordered bulk writes of up to customers.bulk.chunk-size each, one
+    // or two round trips per chunk instead of one per customer. Each operation gets its own result,
+    // in request order; a failed one does not stop the others.
+    public List<BulkResult> bulkWrite(List<BulkOperation> operations) {
+        if (operations.size() > bulk.getMaxOperations()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "At most " + bulk.getMaxOperations() + " operations per request");
+        }
+        BulkResult[] results = new BulkResult[operations.size()];
+        List<Integer> chunk = new ArrayList<>(bulk.getChunkSize());
+        for (int i = 0; i < operations.size(); i++) {
+            String error = validate(operations.get(i));
+            if (error != null) {
+                results[i] = new BulkResult(i, HttpStatus.BAD_REQUEST.value(), operations.get(i).getId(), error);
+                continue;
+            }
+            chunk.add(i);
+            if (chunk.size() == bulk.getChunkSize()) {
+                writeChunk(operations, chunk, results);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writeChunk(operations, chunk, results);
+        }
+        return Arrays.asList(results);
     }
 
     public Optional<Customer> getCustomerById(String id) {
-        return customerRepository.findById(id);
+        return customerCache.get(id, customerRepository::findById);
     }
 
+    // Starts the customer at version 0. An id that is already taken is a conflict, not a replace.
     public Customer createCustomer(Customer customer) {
-        return customerRepository.save(customer);
+        customer.setVersion(null);
+        try {
+            return customerRepository.insert(customer);
+        } catch (DuplicateKeyException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Customer already exists with id: " + customer.getId());
+        }
     }
 
+    // Replaces every field of the customer; a version in the body makes the write conditional
     public Customer updateCustomer(Customer customer) {
-        // Check if customer exists
-        if (!customerRepository.existsById(customer.getId())) {
-            throw new RuntimeException("Customer not found with id: " + customer.getId());
+        return write(customer.getId(), customer.getVersion(), fieldsOf(customer));
+    }
+
+    // Sets only the fields in the patch, null clearing one. A "version" makes it conditional like a PUT.
+    public Customer patchCustomer(String id, Map<String, Object> patch) {
+        Map<String, Object> fields = new LinkedHashMap<>(patch);
+        Object version = fields.remove("version");
+        if (version != null && !(version instanceof Number)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "version must be a number");
+        }
+        Object patchedId = fields.remove("id");
+        if (patchedId != null && !patchedId.equals(id)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "id cannot be changed");
+        }
+        if (fields.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The patch sets no fields");
         }
-        return customerRepository.save(customer);
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (!WRITABLE_FIELDS.contains(field.getKey())) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field: " + field.getKey());
+            }
+            if (field.getValue() != null && !(field.getValue() instanceof String)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, field.getKey() + " must be a string");
+            }
+        }
+        return write(id, version != null ? ((Number) version).longValue() : null, fields);
     }
 
     public void deleteCustomer(String id) {
-        // Check if customer exists
-        if (!customerRepository.existsById(id)) {
-            throw new RuntimeException("Customer not found with id: " + id);
+        try {
+            if (mongoTemplate.remove(byId(id), Customer.class).getDeletedCount() == 0) {
+                throw notFound(id);
+            }
+        } finally {
+            customerCache.invalidate(id);
+        }
+    }
+
+    // A single findAndModify, so there is no window between finding the customer and writing it.
+    // Unconditional writes return the customer as updated. Conditional ones run as a pipeline that
+    // leaves the document alone unless the version matches, and return it as it was before: null
+    // means there is no such customer, another version that someone else wrote first.
+    private Customer write(String id, Long version, Map<String, Object> fields) {
+        // Invalidated rather than updated: two concurrent writes could otherwise leave the one that
+        // lost in MongoDB cached. The next read loads what was actually stored.
+        try {
+            if (version == null) {
+                Customer updated = mongoTemplate.findAndModify(byId(id), update(fields),
+                        FindAndModifyOptions.options().returnNew(true), Customer.class);
+                if (updated == null) {
+                    throw notFound(id);
+                }
+                return updated;
+            }
+            Customer previous = mongoTemplate.findAndModify(byId(id), ifVersion(version, fields), Customer.class);
+            if (previous == null) {
+                throw notFound(id);
+            }
+            if (!version.equals(previous.getVersion())) {
+                throw conflict(id, previous.getVersion(), version);
+            }
+            PropertyAccessorFactory.forBeanPropertyAccess(previous).setPropertyValues(fields);
+            previous.setVersion(version + 1);
+            return previous;
+        } finally {
+            customerCache.invalidate(id);
+        }
+    }
+
+    private void writeChunk(List<BulkOperation> operations, List<Integer> chunk, BulkResult[] results) {
+        // Updates and deletes of missing customers answer 404 and updates of a stale version 409, like
+        // the single-item endpoints, so the ids are looked up first, all in one query
+        Map<String, Long> existing = existingVersions(operations, chunk);
+
+        BulkOperations writes = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Customer.class);
+        // Position of each write in the bulk request -> index of its operation
+        List<Integer> written = new ArrayList<>(chunk.size());
+        List<Integer> updates = new ArrayList<>();
+        List<Integer> deletes = new ArrayList<>();
+        Set<String> deleted = new HashSet<>();
+        for (int index : chunk) {
+            BulkOperation operation = operations.get(index);
+            switch (operation.getType()) {
+                case INSERT -> {
+                    Customer customer = operation.getCustomer();
+                    customer.setVersion(0L);
+                    if (customer.getId() == null) {
+                        // Assigned here rather than by the driver, so the result can carry it
+                        customer.setId(new ObjectId().toHexString());
+                    }
+                    writes.insert(customer);
+                    results[index] = new BulkResult(index, HttpStatus.CREATED.value(), customer.getId(), null);
+                }
+                case UPDATE -> {
+                    if (!existing.containsKey(operation.getId())) {
+                        results[index] = notFound(index, operation.getId());
+                        continue;
+                    }
+                    Customer customer = operation.getCustomer();
+                    Long current = existing.get(operation.getId());
+                    if (customer.getVersion() != null && !customer.getVersion().equals(current)) {
+                        results[index] = new BulkResult(index, HttpStatus.CONFLICT.value(), operation.getId(),
+                                conflict(operation.getId(), current, customer.getVersion()).getReason());
+                        continue;
+                    }
+                    // Still conditional on the version, so a write that lands in between is not overwritten
+                    Query query = byId(operation.getId());
+                    if (customer.getVersion() != null) {
+                        query.addCriteria(Criteria.where("version").is(customer.getVersion()));
+                    }
+                    writes.updateOne(query, update(fieldsOf(customer)));
+                    results[index] = new BulkResult(index, HttpStatus.OK.value(), operation.getId(), null);
+                    updates.add(index);
+                }
+                case DELETE -> {
+                    // A second delete of the same customer finds it gone, as it would one at a time
+                    if (!existing.containsKey(operation.getId()) || !deleted.add(operation.getId())) {
+                        results[index] = notFound(index, operation.getId());
+                        continue;
+                    }
+                    writes.remove(byId(operation.getId()));
+                    results[index] = new BulkResult(index, HttpStatus.NO_CONTENT.value(), operation.getId(), null);
+                    deletes.add(index);
+                }
+            }
+            written.add(index);
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+
+        List<String> ids = new ArrayList<>(written.size());
+        for (int index : written) {
+            ids.add(results[index].getId());
+        }
+        BulkWriteResult outcome;
+        try {
+            outcome = writes.execute();
+        } catch (BulkOperationException e) {
+            // Unordered, so everything but these was applied
+            for (BulkWriteError error : e.getErrors()) {
+                int index = written.get(error.getIndex());
+                HttpStatus status = error.getCode() == DUPLICATE_KEY ? HttpStatus.CONFLICT : HttpStatus.INTERNAL_SERVER_ERROR;
+                results[index] = new BulkResult(index, status.value(), results[index].getId(), error.getMessage());
+            }
+            outcome = e.getResult();
+        } catch (DataAccessException e) {
+            // Nothing says how much of the chunk got through, so none of it is reported as done
+            for (int index : written) {
+                results[index] = new BulkResult(index, HttpStatus.INTERNAL_SERVER_ERROR.value(), results[index].getId(),
+                        e.getMostSpecificCause().getMessage());
+            }
+            return;
+        } finally {
+            customerCache.invalidate(ids);
+        }
+
+        updates.removeIf(index -> results[index].getStatus() != HttpStatus.OK.value());
+        if (outcome.getMatchedCount() < updates.size()) {
+            recheckUpdates(operations, updates, results);
+        }
+        deletes.removeIf(index -> results[index].getStatus() != HttpStatus.NO_CONTENT.value());
+        if (outcome.getDeletedCount() < deletes.size()) {
+            recheckDeletes(deletes, outcome.getDeletedCount(), results);
         }
-        customerRepository.deleteById(id);
+    }
+
+    // Fewer updates matched than were sent, so customers were deleted or written by someone else
+    // between the version lookup and the bulk write. They are read again, in one query: the ones
+    // gone answer 404 and those not at the version the update would have left 409. A customer
+    // another write took through that same version step is indistinguishable and stays a 200.
+    private void recheckUpdates(List<BulkOperation> operations, List<Integer> updates, BulkResult[] results) {
+        List<String> ids = new ArrayList<>(updates.size());
+        for (int index : updates) {
+            ids.add(operations.get(index).getId());
+        }
+        Map<String, Long> current = new HashMap<>();
+        Query query = new Query(Criteria.where("id").in(ids));
+        query.fields().include("id", "version");
+        for (Customer customer : mongoTemplate.find(query, Customer.class)) {
+            current.put(customer.getId(), customer.getVersion());
+        }
+
+        for (int index : updates) {
+            BulkOperation operation = operations.get(index);
+            Long expected = operation.getCustomer().getVersion();
+            if (!current.containsKey(operation.getId())) {
+                results[index] = notFound(index, operation.getId());
+            } else if (expected != null && !Long.valueOf(expected + 1).equals(current.get(operation.getId()))) {
+                results[index] = new BulkResult(index, HttpStatus.CONFLICT.value(), operation.getId(),
+                        conflict(operation.getId(), current.get(operation.getId()), expected).getReason());
+            }
+        }
+    }
+
+    // Fewer deletes removed a customer than were sent, so customers were deleted by someone else
+    // between the lookup and the bulk write. Unlike an update, a delete leaves nothing to read back,
+    // and the count is for the chunk as a whole: when none of the deletes removed anything they all
+    // answer 404, like the single-item endpoint. Otherwise which of them came too late cannot be
+    // told apart, and they stay 204, their customers being gone either way.
+    private void recheckDeletes(List<Integer> deletes, int deletedCount, BulkResult[] results) {
+        if (deletedCount == 0) {
+            for (int index : deletes) {
+                results[index] = notFound(index, results[index].getId());
+            }
+        }
+    }
+
+    // Current version of each customer the chunk updates or deletes, null for customers stored before
+    // versioning; customers that do not exist are left out
+    private Map<String, Long> existingVersions(List<BulkOperation> operations, List<Integer> chunk) {
+        List<String> ids = new ArrayList<>();
+        for (int index : chunk) {
+            BulkOperation operation = operations.get(index);
+            if (operation.getType() != BulkOperation.Type.INSERT) {
+                ids.add(operation.getId());
+            }
+        }
+        Map<String, Long> existing = new HashMap<>();
+        if (ids.isEmpty()) {
+            return existing;
+        }
+        Query query = new Query(Criteria.where("id").in(ids));
+        query.fields().include("id", "version");
+        for (Customer customer : mongoTemplate.find(query, Customer.class)) {
+            existing.put(customer.getId(), customer.getVersion());
+        }
+        return existing;
+    }
+
+    private static String validate(BulkOperation operation) {
+        if (operation == null || operation.getType() == null) {
+            return "type must be insert, update or delete";
+        }
+        if (operation.getType() != BulkOperation.Type.INSERT && operation.getId() == null) {
+            return "id is required for " + operation.getType().name().toLowerCase(Locale.ROOT);
+        }
+        if (operation.getType() != BulkOperation.Type.DELETE && operation.getCustomer() == null) {
+            return "customer is required for " + operation.getType().name().toLowerCase(Locale.ROOT);
+        }
+        return null;
+    }
+
+    private static BulkResult notFound(int index, String id) {
+        return new BulkResult(index, HttpStatus.NOT_FOUND.value(), id, "Customer not found with id: " + id);
+    }
+
+    private static ResponseStatusException notFound(String id) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Customer not found with id: " + id);
+    }
+
+    private static ResponseStatusException conflict(String id, Long current, long expected) {
+        return new ResponseStatusException(HttpStatus.CONFLICT,
+                "Customer " + id + " is at version " + current + ", not " + expected);
+    }
+
+    private static Query byId(String id) {
+        return new Query(Criteria.where("id").is(id));
+    }
+
+    // What a PUT stores: every writable field, so ones left out of the body are cleared
+    private static Map<String, Object> fieldsOf(Customer customer) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", customer.getName());
+        fields.put("email", customer.getEmail());
+        fields.put("phone", customer.getPhone());
+        fields.put("address", customer.getAddress());
+        return fields;
+    }
+
+    // $set of the given fields, $unset of the null ones, and the version bump
+    private static Update update(Map<String, Object> fields) {
+        Update update = new Update();
+        fields.forEach((field, value) -> {
+            if (value != null) {
+                update.set(field, value);
+            } else {
+                update.unset(field);
+            }
+        });
+        return update.inc("version", 1);
+    }
+
+    // An update pipeline in which every field keeps its stored value unless the version still
+    // matches. The version is set in a stage of its own after the fields, whose conditions still see
+    // the old one; setting it also keeps Spring Data from appending a version bump of its own.
+    private static AggregationUpdate ifVersion(long version, Map<String, Object> fields) {
+        Document matches = new Document("$eq", List.of("$version", version));
+        SetOperation values = null;
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            // $literal so that a value such as "$name" is not read as a field path
+            Object value = field.getValue() != null ? new Document("$literal", field.getValue()) : "$$REMOVE";
+            Document cond = new Document("$cond", Arrays.asList(matches, value, "$" + field.getKey()));
+            AggregationExpression expression = context -> cond;
+            values = values == null ? new SetOperation(field.getKey(), expression) : values.set(field.getKey(), expression);
+        }
+        Document bumped = new Document("$cond", List.of(matches, version + 1, "$version"));
+        AggregationExpression bump = context -> bumped;
+        return AggregationUpdate.update()
+                .set(values)
+                .set(new SetOperation("version", bump));
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return pagination.getDefaultPageSize();
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be at least 1");
+        }
+        return Math.min(limit, pagination.getMaxPageSize());
+    }
+
+    private static boolean descending(String[] sort) {
+        if (sort.length == 1 || sort[1].trim().equalsIgnoreCase("asc")) {
+            return false;
+        }
+        if (sort.length == 2 && sort[1].trim().equalsIgnoreCase("desc")) {
+            return true;
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be <field> or <field>,asc|desc");
+    }
+
+    // Customers past the cursor's position in the (field, _id) order. Nulls sort before every
+    // string, and $gt/$lt never match them, so they are asked for explicitly.
+    private static Criteria after(CustomerSort sort, boolean descending, CustomerCursor cursor) {
+        if (sort == CustomerSort.ID) {
+            return beyond(Criteria.where("id"), descending, cursor.id());
+        }
+        String field = sort.getField();
+        Criteria sameValue = beyond(Criteria.where(field).is(cursor.value()).and("id"), descending, cursor.id());
+        if (cursor.value() == null) {
+            return descending ? sameValue : new Criteria().orOperator(sameValue, Criteria.where(field).ne(null));
+        }
+        Criteria pastValue = beyond(Criteria.where(field), descending, cursor.value());
+        return descending
+                ? new Criteria().orOperator(pastValue, sameValue, Criteria.where(field).is(null))
+                : new Criteria().orOperator(pastValue, sameValue);
+    }
+
+    private static Criteria beyond(Criteria criteria, boolean descending, Object value) {
+        return descending ? criteria.lt(value) : criteria.gt(value);
     }
 }
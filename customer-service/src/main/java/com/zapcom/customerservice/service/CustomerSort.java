@@ -0,0 +1,46 @@
+
+package com.zapcom.customerservice.service;
+
+import com.zapcom.customerservice.model.Customer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Fields the customer listing can be sorted on. Each is backed by an index on (field, _id), and
+ * _id breaks ties, so a page boundary is a single position in the index.
+ */
+enum CustomerSort {
+
+    ID("id", Customer::getId),
+    NAME("name", Customer::getName),
+    EMAIL("email", Customer::getEmail);
+
+    private final String field;
+
+    private final Function<Customer, String> value;
+
+    CustomerSort(String field, Function<Customer, String> value) {
+        this.field = field;
+        this.value = value;
+    }
+
+    static CustomerSort of(String field) {
+        for (CustomerSort sort : values()) {
+            if (sort.field.equals(field.toLowerCase(Locale.ROOT))) {
+                return sort;
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot sort on " + field + ", only on id, name or email");
+    }
+
+    String getField() {
+        return field;
+    }
+
+    String valueOf(Customer customer) {
+        return value.apply(customer);
+    }
+}
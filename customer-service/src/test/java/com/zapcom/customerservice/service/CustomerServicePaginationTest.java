@@ -0,0 +1,149 @@
+
+package com.zapcom.customerservice.service;
+
+import com.zapcom.customerservice.configuration.PaginationProperties;
+import com.zapcom.customerservice.model.Customer;
+import com.zapcom.customerservice.model.CustomerPage;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * The customer listing against collections of growing size, served by a MongoTemplate that
+ * answers id-ordered queries from memory the way MongoDB would, honouring the query's limit.
+ */
+class CustomerServicePaginationTest {
+
+    private static final int[] COLLECTION_SIZES = {1_000, 10_000, 100_000};
+
+    private static final int LIMIT = 50;
+
+    @Test
+    void eachPageReadsAtMostLimitPlusOne() {
+        for (int size : COLLECTION_SIZES) {
+            InMemoryCustomers collection = new InMemoryCustomers(size);
+            CustomerService service = serviceOver(collection);
+
+            Set<String> seen = new HashSet<>();
+            String previous = null;
+            String cursor = null;
+            int pages = 0;
+            do {
+                CustomerPage page = service.getCustomers(cursor, LIMIT, null);
+                assertThat(collection.lastRead).isLessThanOrEqualTo(LIMIT + 1);
+                assertThat(page.getCustomers()).hasSizeLessThanOrEqualTo(LIMIT);
+                for (Customer customer : page.getCustomers()) {
+                    assertThat(seen.add(customer.getId())).isTrue();
+                    assertThat(previous == null || previous.compareTo(customer.getId()) < 0).isTrue();
+                    previous = customer.getId();
+                }
+                cursor = page.getNextCursor();
+                pages++;
+            } while (cursor != null);
+
+            assertThat(seen).hasSize(size);
+            assertThat(pages).isEqualTo(size / LIMIT);
+        }
+    }
+
+    @Test
+    void allocationPerRequestDoesNotGrowWithCollectionSize() {
+        long[] bytesPerRequest = new long[COLLECTION_SIZES.length];
+        for (int i = 0; i < COLLECTION_SIZES.length; i++) {
+            InMemoryCustomers collection = new InMemoryCustomers(COLLECTION_SIZES[i]);
+            CustomerService service = serviceOver(collection);
+            // A page from the middle of the collection, as a client deep into a listing asks for
+            String cursor = new CustomerCursor("id", false, null, InMemoryCustomers.id(COLLECTION_SIZES[i] / 2)).encode();
+
+            for (int warmup = 0; warmup < 2_000; warmup++) {
+                service.getCustomers(cursor, LIMIT, null);
+            }
+            int requests = 1_000;
+            long before = allocatedBytes();
+            for (int request = 0; request < requests; request++) {
+                service.getCustomers(cursor, LIMIT, null);
+            }
+            bytesPerRequest[i] = (allocatedBytes() - before) / requests;
+        }
+
+        // A hundred times the customers, and no more than a little noise on top per request
+        long smallest = bytesPerRequest[0];
+        for (long bytes : bytesPerRequest) {
+            assertThat(bytes).isLessThanOrEqualTo(smallest + smallest / 4);
+        }
+    }
+
+    private static CustomerService serviceOver(InMemoryCustomers collection) {
+        // Stub only, so the mock does not keep every invocation and skew the allocation figures
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, withSettings().stubOnly());
+        when(mongoTemplate.find(any(Query.class), eq(Customer.class))).thenAnswer(collection);
+
+        CustomerService service = new CustomerService();
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "pagination", new PaginationProperties());
+        return service;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    // Customers by id, answering find with the ones past the query's {id: {$gt: ...}} up to its limit
+    private static final class InMemoryCustomers implements Answer<List<Customer>> {
+
+        private final NavigableMap<String, Customer> byId = new TreeMap<>();
+
+        // Documents handed back by the last find
+        private int lastRead;
+
+        private InMemoryCustomers(int size) {
+            for (int i = 0; i < size; i++) {
+                Customer customer = new Customer("Customer " + i, "customer" + i + "@example.com", "555-0100", "1 Main St");
+                customer.setId(id(i));
+                byId.put(customer.getId(), customer);
+            }
+        }
+
+        // Zero padded, so ids sort as the numbers do
+        private static String id(int i) {
+            return String.format("customer-%08d", i);
+        }
+
+        @Override
+        public List<Customer> answer(InvocationOnMock invocation) {
+            Query query = invocation.getArgument(0);
+            assertThat(query.getSortObject()).isEqualTo(new Document("id", 1));
+            Document after = query.getQueryObject().get("id", Document.class);
+            NavigableMap<String, Customer> remaining = after == null ? byId : byId.tailMap(after.getString("$gt"), false);
+
+            List<Customer> customers = new ArrayList<>();
+            for (Customer customer : remaining.values()) {
+                if (query.getLimit() > 0 && customers.size() == query.getLimit()) {
+                    break;
+                }
+                customers.add(customer);
+            }
+            lastRead = customers.size();
+            return customers;
+        }
+    }
+}
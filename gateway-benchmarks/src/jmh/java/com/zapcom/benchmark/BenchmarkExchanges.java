@@ -0,0 +1,208 @@
+
+package com.zapcom.benchmark;
+
+import com.zapcom.filter.HedgingFilter;
+import com.zapcom.routing.CompiledRoute;
+import com.zapcom.routing.RouteTableRegistry;
+import org.springframework.cloud.gateway.filter.ForwardRoutingFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.WebsocketRoutingFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.i18n.LocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionManager;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory exchanges and filter chains for driving gateway filters without a network. The upstream
+ * is replaced by a filter that answers every request with the same customer list, large enough
+ * to be compressed.
+ */
+final class BenchmarkExchanges {
+
+    static final byte[] UPSTREAM_BODY = customerList(20);
+
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("203.0.113.7", 51234);
+
+    // Shared like the server's own; MockServerWebExchange creates a codec configurer, with its
+    // ObjectMapper, for every exchange, which costs more than most of the filters under test
+    private static final ServerCodecConfigurer CODECS = ServerCodecConfigurer.create();
+
+    private static final WebSessionManager SESSIONS = new DefaultWebSessionManager();
+
+    private static final LocaleContextResolver LOCALES = new AcceptHeaderLocaleContextResolver();
+
+    private BenchmarkExchanges() {
+    }
+
+    static Route route(ApplicationContext context, String path) {
+        CompiledRoute route = context.getBean(RouteTableRegistry.class).current().match(path);
+        if (route == null) {
+            throw new IllegalStateException("No route for " + path);
+        }
+        return route.getRoute();
+    }
+
+    static ServerWebExchange exchange(Route route, HttpMethod method, String path, String authorization) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.method(method, path)
+            .remoteAddress(CLIENT)
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        if (authorization != null) {
+            request.header(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        ServerWebExchange exchange = new DefaultServerWebExchange(request.build(), new DiscardingResponse(),
+            SESSIONS, CODECS, LOCALES);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    // The filters the gateway runs for the route, minus the ones that talk to the upstream,
+    // ending in the canned upstream response
+    static List<GatewayFilter> routeFilters(ApplicationContext context, Route route) {
+        List<GatewayFilter> filters = new ArrayList<>();
+        for (GlobalFilter global : context.getBeansOfType(GlobalFilter.class).values()) {
+            if (!sendsUpstream(global)) {
+                int order = global instanceof Ordered ? ((Ordered) global).getOrder() : Ordered.LOWEST_PRECEDENCE;
+                filters.add(new OrderedGatewayFilter(global::filter, order));
+            }
+        }
+        for (GatewayFilter filter : route.getFilters()) {
+            if (!sendsUpstream(filter)) {
+                filters.add(filter);
+            }
+        }
+        AnnotationAwareOrderComparator.sort(filters);
+        filters.add(upstream());
+        return filters;
+    }
+
+    static GatewayFilterChain chain(List<GatewayFilter> filters) {
+        return new Chain(filters, 0);
+    }
+
+    // A chain that goes straight to the canned upstream response
+    static GatewayFilterChain upstreamChain() {
+        return chain(List.of(upstream()));
+    }
+
+    static GatewayFilter upstream() {
+        return (exchange, chain) -> {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            response.getHeaders().setContentLength(UPSTREAM_BODY.length);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(UPSTREAM_BODY)));
+        };
+    }
+
+    private static boolean sendsUpstream(Object filter) {
+        if (filter instanceof OrderedGatewayFilter) {
+            filter = ((OrderedGatewayFilter) filter).getDelegate();
+        }
+        // HedgingFilter sends its own requests, the rest are the gateway's routing filters
+        return filter instanceof NettyRoutingFilter
+            || filter instanceof NettyWriteResponseFilter
+            || filter instanceof WebsocketRoutingFilter
+            || filter instanceof ForwardRoutingFilter
+            || filter instanceof HedgingFilter;
+    }
+
+    private static byte[] customerList(int customers) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < customers; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"6532a1f0c2").append(i).append("\",\"name\":\"Customer ").append(i)
+                .append("\",\"email\":\"customer").append(i).append("@example.com\",\"phone\":\"+1-555-01")
+                .append(String.format("%02d", i)).append("\",\"address\":\"").append(i).append(" Main Street\"}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Chain implements GatewayFilterChain {
+
+        private final List<GatewayFilter> filters;
+
+        private final int index;
+
+        private Chain(List<GatewayFilter> filters, int index) {
+            this.filters = filters;
+            this.index = index;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange) {
+            if (index < filters.size()) {
+                return filters.get(index).filter(exchange, new Chain(filters, index + 1));
+            }
+            return Mono.empty();
+        }
+    }
+
+    // Releases what is written, as the socket write would. MockServerHttpResponse keeps the body
+    // and creates an exception, stack trace and all, for every response
+    private static final class DiscardingResponse extends AbstractServerHttpResponse {
+
+        private DiscardingResponse() {
+            super(DefaultDataBufferFactory.sharedInstance);
+        }
+
+        @Override
+        public <T> T getNativeResponse() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+            return Flux.from(body).doOnNext(DataBufferUtils::release).then();
+        }
+
+        @Override
+        protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return Flux.from(body).concatMap(Flux::from).doOnNext(DataBufferUtils::release).then();
+        }
+
+        @Override
+        protected void applyStatusCode() {
+        }
+
+        @Override
+        protected void applyHeaders() {
+        }
+
+        @Override
+        protected void applyCookies() {
+        }
+    }
+}
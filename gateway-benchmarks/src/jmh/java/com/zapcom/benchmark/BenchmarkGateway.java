@@ -0,0 +1,94 @@
+
+package com.zapcom.benchmark;
+
+import com.zapcom.ApiGatewayServiceApplication;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Boots the gateway once per trial, so filters are measured with the beans, configuration and
+ * route table they run with in production. The HTTP server listens on a random port, but no
+ * benchmark sends requests through it: exchanges are built in memory and handed to the filters.
+ */
+final class BenchmarkGateway {
+
+    private static final String[] DEFAULTS = {
+        "server.port=0",
+        // Actuator has a port of its own, which would clash with a gateway already running here
+        "management.server.port=0",
+        "logging.level.root=WARN",
+        "logging.level.com.zapcom=WARN",
+        // application.yml turns on DEBUG for these, which would dominate the numbers
+        "logging.level.org.springframework.cloud.gateway=WARN",
+        "logging.level.org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping=WARN",
+        "logging.level.org.springframework.web.reactive.function.client.ExchangeFunctions=WARN",
+        "logging.level.reactor.netty=WARN",
+        "gateway.access-log.path=build/benchmark-access.log",
+        // In-process limits so no Redis is needed, and tiers high enough that the admit path is measured
+        "gateway.rate-limiter.mode=local",
+        "gateway.rate-limiter.tiers.USER.replenish-rate=100000000",
+        "gateway.rate-limiter.tiers.USER.burst-capacity=100000000",
+        "gateway.rate-limiter.tiers.ADMIN.replenish-rate=100000000",
+        "gateway.rate-limiter.tiers.ADMIN.burst-capacity=100000000",
+        // A benchmark saturates the CPU on purpose, which must not shed its own requests
+        "gateway.load-shedding.lag-threshold=1h",
+        "gateway.load-shedding.pending-threshold=2147483647"
+    };
+
+    private BenchmarkGateway() {
+    }
+
+    // Passed as command line arguments so they take precedence over application.yml; benchmarks
+    // can override the defaults
+    static ConfigurableApplicationContext start(String... overrides) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String property : DEFAULTS) {
+            put(properties, property);
+        }
+        for (String property : overrides) {
+            put(properties, property);
+        }
+        String[] args = properties.entrySet().stream()
+            .map(property -> "--" + property.getKey() + "=" + property.getValue())
+            .toArray(String[]::new);
+        return new SpringApplicationBuilder(ApiGatewayServiceApplication.class)
+            .bannerMode(Banner.Mode.OFF)
+            .run(args);
+    }
+
+    // A token signed with the gateway's secret, padded with an extra claim to roughly claimBytes more
+    static String token(ConfigurableApplicationContext context, String subject, String role, int claimBytes) {
+        String secret = context.getEnvironment().getRequiredProperty("jwt.secret");
+        JwtBuilder builder = Jwts.builder()
+            .setSubject(subject)
+            .claim("role", role)
+            .setExpiration(new Date(System.currentTimeMillis() + 3_600_000L));
+        if (claimBytes > 0) {
+            builder.claim("padding", "x".repeat(claimBytes));
+        }
+        return builder.signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8))).compact();
+    }
+
+    static String expiredToken(ConfigurableApplicationContext context, String subject) {
+        String secret = context.getEnvironment().getRequiredProperty("jwt.secret");
+        return Jwts.builder()
+            .setSubject(subject)
+            .setExpiration(new Date(System.currentTimeMillis() - 60_000L))
+            .signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+    }
+
+    private static void put(Map<String, String> properties, String property) {
+        int separator = property.indexOf('=');
+        properties.put(property.substring(0, separator), property.substring(separator + 1));
+    }
+}
@@ -0,0 +1,149 @@
+
+package com.zapcom.benchmark;
+
+import com.zapcom.utils.ApiGatewayUtils;
+import com.zapcom.utils.Constants;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each filter on the customer route on its own, in front of the canned upstream response, for
+ * authenticated GETs cycling over a fixed set of customers. The request looks as it does once
+ * JwtAuthFilter has passed it, so filters that rely on the verified caller see one. "none" is
+ * the exchange and canned upstream alone, the baseline to subtract.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final int PATHS = 1024;
+
+    @Param({
+        "none",
+        "RouteMetricsFilter",
+        "LoadSheddingFilter",
+        "RequestLoggingFilter",
+        "ResponseTransformFilter",
+        "JwtAuthFilter",
+        "ResponseCompressionFilter",
+        "ResponseCacheFilter",
+        "RequestCoalescingFilter",
+        "ConcurrencyLimitFilter",
+        "RetryBudgetFilter",
+        "PrefixRewrite",
+        "CircuitBreaker",
+        "RequestRateLimiter",
+        "LoadBalancerFilter"
+    })
+    private String filterName;
+
+    private ConfigurableApplicationContext context;
+
+    private GatewayFilter filter;
+
+    private GatewayFilterChain chain;
+
+    private Route route;
+
+    private String authorization;
+
+    private Claims claims;
+
+    private String[] paths;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkGateway.start();
+        route = BenchmarkExchanges.route(context, "/api/customers/1");
+        filter = filterName.equals("none") ? (exchange, filterChain) -> filterChain.filter(exchange) : find(filterName);
+        chain = BenchmarkExchanges.upstreamChain();
+
+        String token = BenchmarkGateway.token(context, "benchmark-user", "USER", 0);
+        authorization = "Bearer " + token;
+        claims = context.getBean(ApiGatewayUtils.class).validateToken(token);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = "/api/customers/6532a1f0c2" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ServerWebExchange filter() {
+        String path = paths[next++ & (PATHS - 1)];
+        ServerWebExchange exchange = BenchmarkExchanges.exchange(route, HttpMethod.GET, path, authorization);
+        filter.filter(authenticated(exchange, path), chain).block();
+        return exchange;
+    }
+
+    // What JwtAuthFilter and RouteToRequestUrlFilter leave behind for the filters after them
+    private ServerWebExchange authenticated(ServerWebExchange exchange, String path) {
+        exchange.getAttributes().put(Constants.JWT_CLAIMS_ATTR, claims);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+            URI.create(route.getUri() + path.replace("/api/customers", "/customers")));
+        ServerHttpRequest request = exchange.getRequest().mutate()
+            .headers(headers -> {
+                headers.set(Constants.USER_ID_HEADER, claims.getSubject());
+                headers.set(Constants.USER_ROLE_HEADER, Constants.DEFAULT_ROLE);
+            })
+            .build();
+        return exchange.mutate().request(request).build();
+    }
+
+    // A filter bean by class name, or a filter the route table created by its factory name
+    private GatewayFilter find(String name) {
+        for (Object bean : context.getBeansOfType(GatewayFilter.class).values()) {
+            if (bean.getClass().getSimpleName().equals(name)) {
+                return (GatewayFilter) bean;
+            }
+        }
+        for (GlobalFilter bean : context.getBeansOfType(GlobalFilter.class).values()) {
+            if (bean.getClass().getSimpleName().equals(name)) {
+                return bean::filter;
+            }
+        }
+        for (GatewayFilter routeFilter : route.getFilters()) {
+            GatewayFilter delegate = routeFilter instanceof OrderedGatewayFilter
+                ? ((OrderedGatewayFilter) routeFilter).getDelegate()
+                : routeFilter;
+            if (delegate.toString().contains(name)) {
+                return routeFilter;
+            }
+        }
+        throw new IllegalArgumentException("No filter named " + name + " on route " + route.getId());
+    }
+}
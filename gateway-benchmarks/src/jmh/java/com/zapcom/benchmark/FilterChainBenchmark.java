@@ -0,0 +1,104 @@
+
+package com.zapcom.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything the gateway runs for a request on a route, global and route filters in their
+ * production order, with only the network hop to the upstream replaced by a canned response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterChainBenchmark {
+
+    private static final int PATHS = 1024;
+
+    private ConfigurableApplicationContext context;
+
+    private Route customers;
+
+    private Route auth;
+
+    private GatewayFilterChain customerChain;
+
+    private GatewayFilterChain authChain;
+
+    private String authorization;
+
+    private String[] paths;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkGateway.start();
+        customers = BenchmarkExchanges.route(context, "/api/customers/1");
+        auth = BenchmarkExchanges.route(context, "/api/auth/login");
+        customerChain = BenchmarkExchanges.chain(BenchmarkExchanges.routeFilters(context, customers));
+        authChain = BenchmarkExchanges.chain(BenchmarkExchanges.routeFilters(context, auth));
+        authorization = "Bearer " + BenchmarkGateway.token(context, "benchmark-user", "USER", 0);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = "/api/customers/6532a1f0c2" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    // Repeated lookups over a fixed set of customers, so mostly answered from the response cache
+    @Benchmark
+    public ServerWebExchange customerGet() {
+        return run(customerChain, customers, HttpMethod.GET, nextPath(), authorization);
+    }
+
+    // Writes bypass the cache and coalescing and go through to the upstream
+    @Benchmark
+    public ServerWebExchange customerPost() {
+        return run(customerChain, customers, HttpMethod.POST, "/api/customers", authorization);
+    }
+
+    @Benchmark
+    public ServerWebExchange customerUnauthenticated() {
+        return run(customerChain, customers, HttpMethod.GET, nextPath(), null);
+    }
+
+    @Benchmark
+    public ServerWebExchange authLogin() {
+        return run(authChain, auth, HttpMethod.POST, "/api/auth/login", null);
+    }
+
+    private ServerWebExchange run(GatewayFilterChain chain, Route route, HttpMethod method, String path,
+                                  String authorization) {
+        ServerWebExchange exchange = BenchmarkExchanges.exchange(route, method, path, authorization);
+        chain.filter(exchange).block();
+        return exchange;
+    }
+
+    private String nextPath() {
+        return paths[next++ & (PATHS - 1)];
+    }
+}
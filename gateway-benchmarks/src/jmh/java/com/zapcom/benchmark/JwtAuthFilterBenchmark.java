@@ -0,0 +1,109 @@
+
+package com.zapcom.benchmark;
+
+import com.zapcom.filter.JwtAuthFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtAuthFilter for each way a request can come out of it: a valid token, the rejections a
+ * flood of bad credentials produces, and an open endpoint that skips authentication.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthFilterBenchmark {
+
+    @Param({"true", "false"})
+    private boolean claimsCache;
+
+    private ConfigurableApplicationContext context;
+
+    private JwtAuthFilter filter;
+
+    private GatewayFilterChain chain;
+
+    private Route customers;
+
+    private Route auth;
+
+    private String valid;
+
+    private String expired;
+
+    private String badSignature;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkGateway.start("jwt.claims-cache.enabled=" + claimsCache);
+        filter = context.getBean(JwtAuthFilter.class);
+        chain = BenchmarkExchanges.upstreamChain();
+        customers = BenchmarkExchanges.route(context, "/api/customers/1");
+        auth = BenchmarkExchanges.route(context, "/api/auth/login");
+        String token = BenchmarkGateway.token(context, "benchmark-user", "USER", 0);
+        valid = "Bearer " + token;
+        expired = "Bearer " + BenchmarkGateway.expiredToken(context, "benchmark-user");
+        badSignature = valid.substring(0, valid.length() - 4) + (valid.endsWith("AAAA") ? "BBBB" : "AAAA");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ServerWebExchange validToken() {
+        return run(customers, "/api/customers/1", valid);
+    }
+
+    @Benchmark
+    public ServerWebExchange missingHeader() {
+        return run(customers, "/api/customers/1", null);
+    }
+
+    @Benchmark
+    public ServerWebExchange malformedToken() {
+        return run(customers, "/api/customers/1", "Bearer not-a-token");
+    }
+
+    @Benchmark
+    public ServerWebExchange invalidSignature() {
+        return run(customers, "/api/customers/1", badSignature);
+    }
+
+    @Benchmark
+    public ServerWebExchange expiredToken() {
+        return run(customers, "/api/customers/1", expired);
+    }
+
+    @Benchmark
+    public ServerWebExchange openEndpoint() {
+        return run(auth, "/api/auth/login", null);
+    }
+
+    private ServerWebExchange run(Route route, String path, String authorization) {
+        ServerWebExchange exchange = BenchmarkExchanges.exchange(route, HttpMethod.GET, path, authorization);
+        filter.filter(exchange, chain).block();
+        return exchange;
+    }
+}
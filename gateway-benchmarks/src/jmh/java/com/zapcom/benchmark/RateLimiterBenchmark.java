@@ -0,0 +1,117 @@
+
+package com.zapcom.benchmark;
+
+import com.zapcom.ratelimit.LocalRateLimiter;
+import com.zapcom.ratelimit.PrincipalKeyResolver;
+import com.zapcom.utils.ApiGatewayUtils;
+import com.zapcom.utils.Constants;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pieces of the customer route's RequestRateLimiter: resolving the key from the verified
+ * principal or the client address, and admitting it against the in-process token buckets,
+ * directly and through the per-role tiers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final int KEYS = 1024;
+
+    private ConfigurableApplicationContext context;
+
+    private LocalRateLimiter localRateLimiter;
+
+    private RateLimiter<?> tieredRateLimiter;
+
+    private PrincipalKeyResolver principalKeyResolver;
+
+    private KeyResolver ipKeyResolver;
+
+    private String routeId;
+
+    private String[] principalKeys;
+
+    private ServerWebExchange principalExchange;
+
+    private ServerWebExchange anonymousExchange;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkGateway.start();
+        localRateLimiter = context.getBean(LocalRateLimiter.class);
+        tieredRateLimiter = context.getBean("tieredRateLimiter", RateLimiter.class);
+        principalKeyResolver = context.getBean(PrincipalKeyResolver.class);
+        ipKeyResolver = context.getBean("ipKeyResolver", KeyResolver.class);
+
+        Route route = BenchmarkExchanges.route(context, "/api/customers/1");
+        routeId = route.getId();
+        principalKeys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            principalKeys[i] = "principal:USER:user-" + i;
+        }
+
+        Claims claims = context.getBean(ApiGatewayUtils.class)
+            .validateToken(BenchmarkGateway.token(context, "benchmark-user", "USER", 0));
+        principalExchange = BenchmarkExchanges.exchange(route, HttpMethod.GET, "/api/customers/1", null);
+        principalExchange.getAttributes().put(Constants.JWT_CLAIMS_ATTR, claims);
+        anonymousExchange = BenchmarkExchanges.exchange(route, HttpMethod.GET, "/api/customers/1", null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String principalKey() {
+        return principalKeyResolver.resolve(principalExchange).block();
+    }
+
+    @Benchmark
+    public String principalKeyIpFallback() {
+        return principalKeyResolver.resolve(anonymousExchange).block();
+    }
+
+    @Benchmark
+    public String ipKey() {
+        return ipKeyResolver.resolve(anonymousExchange).block();
+    }
+
+    // One client over the route's own limit, so nearly every call is a rejection
+    @Benchmark
+    public RateLimiter.Response localSingleKey() {
+        return localRateLimiter.isAllowed(routeId, "ip:203.0.113.7").block();
+    }
+
+    // Many principals within their tier, the admit path
+    @Benchmark
+    public RateLimiter.Response tieredPrincipals() {
+        return tieredRateLimiter.isAllowed(routeId, principalKeys[next++ & (KEYS - 1)]).block();
+    }
+}
@@ -0,0 +1,111 @@
+
+package com.zapcom.benchmark;
+
+import com.zapcom.routing.CompiledRoute;
+import com.zapcom.routing.RouteTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the route for a request path as the route count grows: a lookup in the
+ * compiled route table against testing Path=/prefix/** patterns one route after another, the
+ * way predicate-based routing does. The scan is a lower bound for the stock handler mapping,
+ * which also goes through a reactive predicate per route.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatchBenchmark {
+
+    private static final int PATHS = 1024;
+
+    @Param({"10", "100", "1000", "5000"})
+    private int routeCount;
+
+    // Share of requests that match no route and so walk the whole scan
+    @Param({"0.0", "0.1"})
+    private double missRatio;
+
+    private RouteTable routeTable;
+
+    private List<PathPattern> patterns;
+
+    private String[] paths;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<CompiledRoute> routes = new ArrayList<>(routeCount);
+        patterns = new ArrayList<>(routeCount);
+        PathPatternParser parser = new PathPatternParser();
+        for (int i = 0; i < routeCount; i++) {
+            String prefix = prefix(i);
+            Route route = Route.async()
+                .id("service-" + i)
+                .uri(URI.create("lb://service-" + i))
+                .predicate(exchange -> true)
+                .build();
+            routes.add(new CompiledRoute(prefix, route, null));
+            patterns.add(parser.parse(prefix + "/**"));
+        }
+        routeTable = new RouteTable(1, "benchmark", routes);
+
+        Random random = new Random(42);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            int route = random.nextInt(routeCount);
+            paths[i] = random.nextDouble() < missRatio
+                ? "/api/unknown-" + route + "/orders/" + random.nextInt(100_000)
+                : prefix(route) + "/orders/" + random.nextInt(100_000);
+        }
+    }
+
+    @Benchmark
+    public CompiledRoute routeTable() {
+        return routeTable.match(nextPath());
+    }
+
+    @Benchmark
+    public PathPattern predicateScan() {
+        // Parsed once per request, as the Path predicate caches it on the exchange
+        PathContainer path = PathContainer.parsePath(nextPath());
+        for (PathPattern pattern : patterns) {
+            if (pattern.matches(path)) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    private String nextPath() {
+        return paths[next++ & (PATHS - 1)];
+    }
+
+    // Shares a long common stem across routes, like real service paths do
+    private static String prefix(int route) {
+        return "/api/v1/tenants/service-" + route;
+    }
+}
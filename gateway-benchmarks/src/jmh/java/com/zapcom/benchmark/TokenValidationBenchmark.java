@@ -0,0 +1,71 @@
+
+package com.zapcom.benchmark;
+
+import com.zapcom.utils.ApiGatewayUtils;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token validation as the size of the token grows, with the claims cache answering replays
+ * and with every call going through signature verification and parsing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenValidationBenchmark {
+
+    // Extra claim bytes on top of subject, role and expiry
+    @Param({"0", "1024", "8192"})
+    private int claimBytes;
+
+    @Param({"true", "false"})
+    private boolean claimsCache;
+
+    private ConfigurableApplicationContext context;
+
+    private ApiGatewayUtils utils;
+
+    private String token;
+
+    private String authorization;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkGateway.start("jwt.claims-cache.enabled=" + claimsCache);
+        utils = context.getBean(ApiGatewayUtils.class);
+        token = BenchmarkGateway.token(context, "benchmark-user", "USER", claimBytes);
+        authorization = "Bearer " + token;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Claims validateToken() {
+        return utils.validateToken(token);
+    }
+
+    @Benchmark
+    public Claims validateBearerToken() {
+        return utils.validateBearerToken(authorization);
+    }
+}
@@ -0,0 +1,153 @@
+
+package com.zapcom.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load: request n is due at start + n / rps and is sent then, however many earlier
+ * requests are still unanswered, the way independent clients arrive. Latency is measured from
+ * when a request was due, not from when it went out, so time spent queued behind a stall (in
+ * the client's connection pool, or in the generator itself falling behind) is counted instead
+ * of hidden, which is the coordinated omission a closed loop of blocking clients suffers from.
+ */
+final class LoadGenerator {
+
+    private final HttpClient client;
+
+    private final LoadTestOptions options;
+
+    private final String[] authorizations;
+
+    private final Scenario[] scenarios;
+
+    // Running totals of the scenario weights, for a weighted pick
+    private final int[] weights;
+
+    private final Map<Scenario, byte[]> bodies = new EnumMap<>(Scenario.class);
+
+    // Microseconds from when a request was due, and from when it was actually sent
+    private final Recorder corrected = new Recorder(3);
+
+    private final Recorder uncorrected = new Recorder(3);
+
+    // Completed requests by scenario and status code, or exception for the ones that got no answer
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    // Customer operations in successfully answered requests, a bulk request counting each of its own
+    private final LongAdder operations = new LongAdder();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private long measureFrom;
+
+    LoadGenerator(HttpClient client, LoadTestOptions options, String[] authorizations) {
+        this.client = client;
+        this.options = options;
+        this.authorizations = authorizations;
+        scenarios = options.mix.keySet().toArray(Scenario[]::new);
+        weights = new int[scenarios.length];
+        int total = 0;
+        for (int i = 0; i < scenarios.length; i++) {
+            total += options.mix.get(scenarios[i]);
+            weights[i] = total;
+            bodies.put(scenarios[i], scenarios[i].body(options.bulkSize));
+        }
+    }
+
+    LoadReport run() {
+        long start = System.nanoTime();
+        measureFrom = start + options.warmup.toNanos();
+        long end = measureFrom + options.duration.toNanos();
+        double interval = TimeUnit.SECONDS.toNanos(1) / options.rps;
+
+        long sent = 0;
+        long maxLag = 0;
+        for (long n = 0; ; n++) {
+            long due = start + (long) (n * interval);
+            if (due - end >= 0) {
+                break;
+            }
+            long now = System.nanoTime();
+            while (due - now > 0) {
+                LockSupport.parkNanos(due - now);
+                now = System.nanoTime();
+            }
+            if (due - measureFrom >= 0) {
+                sent++;
+                maxLag = Math.max(maxLag, now - due);
+            }
+            send(due);
+        }
+
+        // Whatever is still unanswered after the timeout has been counted as an error by then
+        long deadline = System.nanoTime() + options.timeout.toNanos() + TimeUnit.SECONDS.toNanos(1);
+        while (inFlight.get() > 0 && deadline - System.nanoTime() > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        return new LoadReport(options, sent, maxLag, inFlight.get(), operations.sum(), corrected.getIntervalHistogram(),
+            uncorrected.getIntervalHistogram(), outcomes);
+    }
+
+    private void send(long due) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Scenario scenario = pick(random.nextInt(weights[weights.length - 1]));
+        String path = scenario.path(random.nextInt(options.customers) + 1);
+        String authorization = scenario.isAuthenticated() ? authorizations[random.nextInt(authorizations.length)] : null;
+        byte[] body = bodies.get(scenario);
+
+        inFlight.incrementAndGet();
+        long sentAt = System.nanoTime();
+        client.request(scenario.getMethod())
+            .uri(path)
+            .send((request, outbound) -> {
+                if (authorization != null) {
+                    request.header(HttpHeaderNames.AUTHORIZATION, authorization);
+                }
+                if (body == null) {
+                    return outbound;
+                }
+                request.header(HttpHeaderNames.CONTENT_TYPE, "application/json");
+                return outbound.sendByteArray(Mono.just(body));
+            })
+            .responseSingle((response, content) -> content.then(Mono.just(response.status().code())))
+            .timeout(options.timeout)
+            .subscribe(
+                status -> complete(scenario, String.valueOf(status), status < 300, due, sentAt),
+                error -> complete(scenario, error.getClass().getSimpleName(), false, due, sentAt));
+    }
+
+    private void complete(Scenario scenario, String outcome, boolean succeeded, long due, long sentAt) {
+        long now = System.nanoTime();
+        inFlight.decrementAndGet();
+        if (due - measureFrom < 0) {
+            return;
+        }
+        corrected.recordValue(TimeUnit.NANOSECONDS.toMicros(now - due));
+        uncorrected.recordValue(TimeUnit.NANOSECONDS.toMicros(now - sentAt));
+        outcomes.computeIfAbsent(scenario.displayName() + " " + outcome, key -> new LongAdder()).increment();
+        if (succeeded) {
+            operations.add(scenario.operations(options.bulkSize));
+        }
+    }
+
+    private Scenario pick(int weight) {
+        for (int i = 0; i < weights.length; i++) {
+            if (weight < weights[i]) {
+                return scenarios[i];
+            }
+        }
+        return scenarios[scenarios.length - 1];
+    }
+}
@@ -0,0 +1,97 @@
+
+package com.zapcom.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a run measured: throughput, outcomes, and latency percentiles both from when requests
+ * were due (corrected for coordinated omission, the numbers to go by) and from when they were
+ * sent (what a closed-loop tool would have reported, for comparison).
+ */
+final class LoadReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final LoadTestOptions options;
+
+    private final long sent;
+
+    private final long maxLagNanos;
+
+    private final int unfinished;
+
+    private final long operations;
+
+    private final Histogram corrected;
+
+    private final Histogram uncorrected;
+
+    private final Map<String, LongAdder> outcomes;
+
+    LoadReport(LoadTestOptions options, long sent, long maxLagNanos, int unfinished, long operations,
+               Histogram corrected, Histogram uncorrected, Map<String, LongAdder> outcomes) {
+        this.options = options;
+        this.sent = sent;
+        this.maxLagNanos = maxLagNanos;
+        this.unfinished = unfinished;
+        this.operations = operations;
+        this.corrected = corrected;
+        this.uncorrected = uncorrected;
+        this.outcomes = outcomes;
+    }
+
+    void print(PrintStream out) {
+        double seconds = options.duration.toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+        long completed = corrected.getTotalCount();
+        out.printf("%nTarget %.0f req/s for %ss after a %ss warm-up, %d connections, %d instances per service%n",
+            options.rps, options.duration.toSeconds(), options.warmup.toSeconds(), options.connections, options.instances);
+        out.printf("Sent %d (%.1f req/s), completed %d (%.1f req/s), unfinished %d%n",
+            sent, sent / seconds, completed, completed / seconds, unfinished);
+        if (options.mix.getOrDefault(Scenario.CUSTOMER_BULK, 0) > 0) {
+            // What to compare between a customer-bulk and a customer-post run
+            out.printf("Customer operations in successful requests %d (%.1f/s), %d per customer-bulk request%n",
+                operations, operations / seconds, options.bulkSize);
+        }
+
+        out.printf("%nOutcomes%n");
+        new TreeMap<>(outcomes).forEach((outcome, count) ->
+            out.printf("  %-40s %10d  %6.2f%%%n", outcome, count.sum(), 100.0 * count.sum() / Math.max(1, completed)));
+
+        out.printf("%nLatency (ms)   corrected   uncorrected%n");
+        for (double percentile : PERCENTILES) {
+            out.printf("  p%-10s %11.3f %13.3f%n", format(percentile),
+                millis(corrected.getValueAtPercentile(percentile)), millis(uncorrected.getValueAtPercentile(percentile)));
+        }
+        out.printf("  %-11s %11.3f %13.3f%n", "max", millis(corrected.getMaxValue()), millis(uncorrected.getMaxValue()));
+        out.printf("  %-11s %11.3f %13.3f%n", "mean", corrected.getMean() / 1000, uncorrected.getMean() / 1000);
+
+        // The corrected numbers still hold, but the gateway got less load than asked for
+        if (maxLagNanos > TimeUnit.MILLISECONDS.toNanos(10)) {
+            out.printf("%nThe generator fell up to %.1f ms behind its schedule; the box may be too small for this rate%n",
+                maxLagNanos / 1e6);
+        }
+    }
+
+    // Percentile distribution in milliseconds, for plotting with HdrHistogram's tools
+    void writeHistogram(Path file) throws FileNotFoundException {
+        try (PrintStream out = new PrintStream(file.toFile())) {
+            corrected.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
@@ -0,0 +1,140 @@
+
+package com.zapcom.loadtest;
+
+import com.zapcom.ApiGatewayServiceApplication;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Load test of the gateway on one box, without network access: auth-service and
+ * customer-service are replaced by in-process stubs on loopback ports, the rate limiter runs on
+ * its in-memory backend, and the gateway is booted in this JVM from its own application.yml.
+ * Requests are sent open-loop at --rps and the report is printed when the run ends. To include a
+ * real service, e.g. for customer-bulk against customer-post with MongoDB behind them, point its
+ * stubs elsewhere with --gateway.load-balancer.services.customer-service=http://localhost:8082.
+ */
+public class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final String[] SERVICES = {"auth-service", "customer-service"};
+
+    private static final String[] DEFAULTS = {
+        "server.port=0",
+        "server.address=127.0.0.1",
+        // Actuator has a port of its own, which would clash with a gateway already running here
+        "management.server.port=0",
+        "logging.level.root=WARN",
+        "logging.level.com.zapcom=WARN",
+        "logging.level.com.zapcom.loadtest=INFO",
+        // application.yml turns on DEBUG for these, which would dominate the numbers
+        "logging.level.org.springframework.cloud.gateway=WARN",
+        "logging.level.org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping=WARN",
+        "logging.level.org.springframework.web.reactive.function.client.ExchangeFunctions=WARN",
+        "logging.level.reactor.netty=WARN",
+        "gateway.access-log.path=loadtest-access.log",
+        // In-process limits so no Redis is needed, and tiers high enough that the load is not
+        // throttled; set them back with --gateway.rate-limiter.tiers.USER.replenish-rate=10 etc.
+        "gateway.rate-limiter.mode=local",
+        "gateway.rate-limiter.tiers.USER.replenish-rate=100000000",
+        "gateway.rate-limiter.tiers.USER.burst-capacity=100000000",
+        "gateway.rate-limiter.tiers.ADMIN.replenish-rate=100000000",
+        "gateway.rate-limiter.tiers.ADMIN.burst-capacity=100000000"
+    };
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        // Off the gateway's event loops, though they all share the CPU
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 4);
+        LoopResources stubLoops = LoopResources.create("stub", threads, true);
+        LoopResources clientLoops = LoopResources.create("loadtest", threads, true);
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+            .maxConnections(options.connections)
+            // Requests over the connections wait in the client, which the corrected latency counts
+            .pendingAcquireMaxCount(-1)
+            .pendingAcquireTimeout(options.timeout)
+            .build();
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String property : DEFAULTS) {
+            int separator = property.indexOf('=');
+            properties.put(property.substring(0, separator), property.substring(separator + 1));
+        }
+        List<StubUpstream> stubs = new ArrayList<>();
+        for (String service : SERVICES) {
+            List<StubUpstream> instances = new ArrayList<>();
+            for (int i = 0; i < options.instances; i++) {
+                instances.add(StubUpstream.start(stubLoops, options));
+            }
+            properties.put("gateway.load-balancer.services." + service, instances.stream()
+                .map(stub -> stub.getUri().toString())
+                .collect(Collectors.joining(",")));
+            stubs.addAll(instances);
+        }
+        properties.putAll(options.gatewayProperties);
+
+        // Command line arguments, so they take precedence over application.yml
+        ConfigurableApplicationContext gateway = new SpringApplicationBuilder(ApiGatewayServiceApplication.class)
+            .bannerMode(Banner.Mode.OFF)
+            .run(properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new));
+        try {
+            int port = gateway.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            HttpClient client = HttpClient.create(connections)
+                .runOn(clientLoops)
+                .baseUrl("http://127.0.0.1:" + port)
+                // Compressed responses are drained, not decoded, so the client spends no time on them
+                .headers(headers -> headers.set(HttpHeaderNames.ACCEPT_ENCODING, "gzip"));
+
+            logger.info("Gateway on port {}, {} stub upstreams; warming up for {} then measuring for {} at {} req/s",
+                port, stubs.size(), options.warmup, options.duration, options.rps);
+            LoadReport report = new LoadGenerator(client, options, authorizations(gateway, options.users)).run();
+            report.print(System.out);
+            if (options.histogram != null) {
+                report.writeHistogram(Path.of(options.histogram));
+                logger.info("Latency distribution written to {}", Path.of(options.histogram).toAbsolutePath());
+            }
+        } finally {
+            gateway.close();
+            stubs.forEach(StubUpstream::stop);
+            connections.disposeLater().block();
+            clientLoops.disposeLater().block();
+            stubLoops.disposeLater().block();
+        }
+    }
+
+    // Bearer tokens signed with the gateway's secret, one per user, every tenth one an ADMIN
+    private static String[] authorizations(ConfigurableApplicationContext gateway, int users) {
+        byte[] secret = gateway.getEnvironment().getRequiredProperty("jwt.secret").getBytes(StandardCharsets.UTF_8);
+        Date expiration = new Date(System.currentTimeMillis() + 86_400_000L);
+        String[] authorizations = new String[users];
+        for (int i = 0; i < users; i++) {
+            authorizations[i] = "Bearer " + Jwts.builder()
+                .setSubject("loadtest-user-" + i)
+                .claim("role", i % 10 == 0 ? "ADMIN" : "USER")
+                .setExpiration(expiration)
+                .signWith(Keys.hmacShaKeyFor(secret))
+                .compact();
+        }
+        return authorizations;
+    }
+}
@@ -0,0 +1,134 @@
+
+package com.zapcom.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line options, all --name=value. Options with a dot in the name, such as
+ * --gateway.load-shedding.enabled=false, are passed to the gateway as configuration instead.
+ */
+final class LoadTestOptions {
+
+    // Requests started per second, on schedule whether or not earlier ones have been answered
+    double rps = 1000;
+
+    // Measured run, after a warm-up whose requests are sent the same way but not reported
+    Duration duration = Duration.ofSeconds(30);
+
+    Duration warmup = Duration.ofSeconds(10);
+
+    // Connections the client opens to the gateway; requests beyond them queue in the client
+    int connections = 256;
+
+    // Requests unanswered after this long count as errors
+    Duration timeout = Duration.ofSeconds(5);
+
+    // Stub instances behind each service, so the load balancer and hedging have a choice
+    int instances = 2;
+
+    // Upstream latency, log-normally distributed with this median and 99th percentile
+    Duration upstreamLatency = Duration.ofMillis(5);
+
+    Duration upstreamLatencyP99 = Duration.ofMillis(25);
+
+    // Shares of upstream requests answered 503, and whose connection is closed without an answer
+    double upstreamErrorRate = 0.0;
+
+    double upstreamResetRate = 0.0;
+
+    // Distinct callers tokens are minted for, and distinct customers GETs are spread over
+    int users = 1000;
+
+    int customers = 10_000;
+
+    // Inserts per customer-bulk request
+    int bulkSize = 100;
+
+    // Relative weights of the request types
+    Map<Scenario, Integer> mix = defaultMix();
+
+    // File for the full corrected latency distribution in HdrHistogram's .hgrm format, if any
+    String histogram;
+
+    Map<String, String> gatewayProperties = new LinkedHashMap<>();
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            if (name.contains(".")) {
+                options.gatewayProperties.put(name, value);
+            } else {
+                options.set(name, value);
+            }
+        }
+        if (options.rps <= 0 || options.connections <= 0 || options.instances <= 0
+            || options.users <= 0 || options.customers <= 0 || options.bulkSize <= 0) {
+            throw new IllegalArgumentException("rps, connections, instances, users, customers and bulk-size must be positive");
+        }
+        if (options.upstreamLatencyP99.compareTo(options.upstreamLatency) < 0) {
+            throw new IllegalArgumentException("upstream-latency-p99 must not be below upstream-latency");
+        }
+        return options;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "rps" -> rps = Double.parseDouble(value);
+            case "duration" -> duration = DurationStyle.detectAndParse(value);
+            case "warmup" -> warmup = DurationStyle.detectAndParse(value);
+            case "connections" -> connections = Integer.parseInt(value);
+            case "timeout" -> timeout = DurationStyle.detectAndParse(value);
+            case "instances" -> instances = Integer.parseInt(value);
+            case "upstream-latency" -> upstreamLatency = DurationStyle.detectAndParse(value);
+            case "upstream-latency-p99" -> upstreamLatencyP99 = DurationStyle.detectAndParse(value);
+            case "upstream-error-rate" -> upstreamErrorRate = Double.parseDouble(value);
+            case "upstream-reset-rate" -> upstreamResetRate = Double.parseDouble(value);
+            case "users" -> users = Integer.parseInt(value);
+            case "customers" -> customers = Integer.parseInt(value);
+            case "bulk-size" -> bulkSize = Integer.parseInt(value);
+            case "mix" -> mix = parseMix(value);
+            case "histogram" -> histogram = value;
+            default -> throw new IllegalArgumentException("Unknown option --" + name);
+        }
+    }
+
+    // customer-get:80,auth-login:10,... with the scenario names in lower case
+    private static Map<Scenario, Integer> parseMix(String value) {
+        Map<Scenario, Integer> mix = new EnumMap<>(Scenario.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected scenario:weight in --mix, got " + entry);
+            }
+            int weight = Integer.parseInt(parts[1]);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight in --mix: " + entry);
+            }
+            mix.put(Scenario.of(parts[0]), weight);
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("--mix needs a positive weight");
+        }
+        return mix;
+    }
+
+    private static Map<Scenario, Integer> defaultMix() {
+        Map<Scenario, Integer> mix = new EnumMap<>(Scenario.class);
+        mix.put(Scenario.CUSTOMER_GET, 80);
+        mix.put(Scenario.CUSTOMER_POST, 5);
+        mix.put(Scenario.CUSTOMER_UNAUTHENTICATED, 5);
+        mix.put(Scenario.AUTH_LOGIN, 10);
+        return mix;
+    }
+}
@@ -0,0 +1,85 @@
+
+package com.zapcom.loadtest;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The kinds of request the load is made of, picked at random by their weights in --mix.
+ */
+enum Scenario {
+
+    // Lookups of customers spread over --customers ids, as a signed-in user
+    CUSTOMER_GET(HttpMethod.GET, true, null),
+
+    CUSTOMER_POST(HttpMethod.POST, true,
+        "{\"name\":\"Load Test\",\"email\":\"loadtest@example.com\",\"phone\":\"+1-555-0100\",\"address\":\"1 Main Street\"}"),
+
+    // --bulk-size inserts in one POST /customers/bulk, to compare with as many CUSTOMER_POSTs
+    CUSTOMER_BULK(HttpMethod.POST, true, null),
+
+    // Rejected by JwtAuthFilter before reaching the upstream
+    CUSTOMER_UNAUTHENTICATED(HttpMethod.GET, false, null),
+
+    AUTH_LOGIN(HttpMethod.POST, false, "{\"username\":\"loadtest\",\"password\":\"loadtest\"}");
+
+    private final HttpMethod method;
+
+    private final boolean authenticated;
+
+    private final byte[] body;
+
+    Scenario(HttpMethod method, boolean authenticated, String body) {
+        this.method = method;
+        this.authenticated = authenticated;
+        this.body = body != null ? body.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    static Scenario of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown scenario " + name);
+        }
+    }
+
+    HttpMethod getMethod() {
+        return method;
+    }
+
+    boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    byte[] body(int bulkSize) {
+        if (this != CUSTOMER_BULK) {
+            return body;
+        }
+        String customer = new String(CUSTOMER_POST.body, StandardCharsets.UTF_8);
+        StringBuilder operations = new StringBuilder("[");
+        for (int i = 0; i < bulkSize; i++) {
+            operations.append(i > 0 ? "," : "").append("{\"type\":\"insert\",\"customer\":").append(customer).append('}');
+        }
+        return operations.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Customer operations one request carries
+    int operations(int bulkSize) {
+        return this == CUSTOMER_BULK ? bulkSize : 1;
+    }
+
+    String path(int customer) {
+        return switch (this) {
+            case CUSTOMER_GET, CUSTOMER_UNAUTHENTICATED -> "/api/customers/" + customer;
+            case CUSTOMER_POST -> "/api/customers";
+            case CUSTOMER_BULK -> "/api/customers/bulk";
+            case AUTH_LOGIN -> "/api/auth/login";
+        };
+    }
+
+    String displayName() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -0,0 +1,123 @@
+
+package com.zapcom.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.LoopResources;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An in-process stand-in for one auth-service or customer-service instance on a loopback port.
+ * Every request is answered with a canned body of the shape the real service returns, after a
+ * random latency, or fails with a 503 or a dropped connection at the configured rates.
+ */
+final class StubUpstream {
+
+    // z-score of the 99th percentile of a standard normal distribution
+    private static final double P99_Z = 2.3263478740408408;
+
+    private static final byte[] LOGIN = json("{\"token\":\"stub-token\",\"username\":\"loadtest\",\"role\":\"USER\"}");
+
+    private static final byte[] CUSTOMER = json("{\"id\":\"6532a1f0c2e4b1a9d8f7e6c5\",\"name\":\"Load Test\","
+        + "\"email\":\"loadtest@example.com\",\"phone\":\"+1-555-0100\",\"address\":\"1 Main Street\"}");
+
+    private static final byte[] UNAVAILABLE = json("{\"status\":\"error\",\"message\":\"Stub upstream failure\"}");
+
+    private final DisposableServer server;
+
+    // A result per operation of a customer-bulk request, all of them successful inserts
+    private final byte[] bulkResults;
+
+    private final long medianNanos;
+
+    private final double sigma;
+
+    private final double errorRate;
+
+    private final double resetRate;
+
+    private StubUpstream(LoopResources loops, LoadTestOptions options) {
+        medianNanos = options.upstreamLatency.toNanos();
+        sigma = medianNanos > 0
+            ? Math.log((double) options.upstreamLatencyP99.toNanos() / medianNanos) / P99_Z
+            : 0;
+        errorRate = options.upstreamErrorRate;
+        resetRate = options.upstreamResetRate;
+        StringBuilder results = new StringBuilder("[");
+        for (int i = 0; i < options.bulkSize; i++) {
+            results.append(i > 0 ? "," : "").append("{\"index\":").append(i)
+                .append(",\"status\":201,\"id\":\"6532a1f0c2e4b1a9d8f7e6c5\"}");
+        }
+        bulkResults = json(results.append(']').toString());
+        server = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            // h2c for routes whose upstream transport is prior-knowledge HTTP/2, as customer-service's is
+            .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+            .runOn(loops)
+            .handle((request, response) -> request.receive().then(Mono.defer(() -> answer(request, response))))
+            .bindNow();
+    }
+
+    static StubUpstream start(LoopResources loops, LoadTestOptions options) {
+        return new StubUpstream(loops, options);
+    }
+
+    URI getUri() {
+        return URI.create("http://127.0.0.1:" + server.port());
+    }
+
+    void stop() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> answer(HttpServerRequest request, HttpServerResponse response) {
+        double outcome = ThreadLocalRandom.current().nextDouble();
+        long latency = latencyNanos();
+        Mono<Void> delay = latency > 0 ? Mono.delay(Duration.ofNanos(latency)).then() : Mono.empty();
+
+        if (outcome < resetRate) {
+            return delay.then(Mono.fromRunnable(() -> response.withConnection(Connection::dispose)));
+        }
+        if (outcome < resetRate + errorRate) {
+            return delay.then(Mono.defer(() -> send(response, HttpResponseStatus.SERVICE_UNAVAILABLE, UNAVAILABLE)));
+        }
+        if (request.uri().startsWith("/customers/bulk")) {
+            return delay.then(Mono.defer(() -> send(response, HttpResponseStatus.OK, bulkResults)));
+        }
+        boolean created = request.method().equals(HttpMethod.POST) && request.uri().startsWith("/customers");
+        byte[] body = request.uri().startsWith("/auth") ? LOGIN : CUSTOMER;
+        return delay.then(Mono.defer(() -> send(response, created ? HttpResponseStatus.CREATED : HttpResponseStatus.OK, body)));
+    }
+
+    private long latencyNanos() {
+        if (medianNanos <= 0) {
+            return 0;
+        }
+        return (long) (medianNanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private static Mono<Void> send(HttpServerResponse response, HttpResponseStatus status, byte[] body) {
+        return response.status(status)
+            .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+            .header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(body.length))
+            .sendByteArray(Mono.just(body))
+            .then();
+    }
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
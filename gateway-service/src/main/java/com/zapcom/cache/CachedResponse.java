@@ -0,0 +1,48 @@
+
+package com.zapcom.cache;
+
+import org.springframework.http.HttpHeaders;
+
+public final class CachedResponse {
+
+    // Rough per-entry cost of the key, headers and bookkeeping on top of the body
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    private final HttpHeaders headers;
+    private final byte[] body;
+    private final String etag;
+    private final long freshUntilNanos;
+    private final long staleUntilNanos;
+
+    public CachedResponse(HttpHeaders headers, byte[] body, String etag, long freshUntilNanos, long staleUntilNanos) {
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.body = body;
+        this.etag = etag;
+        this.freshUntilNanos = freshUntilNanos;
+        this.staleUntilNanos = staleUntilNanos;
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public boolean isFresh(long nowNanos) {
+        return freshUntilNanos - nowNanos > 0;
+    }
+
+    public boolean isServableStale(long nowNanos) {
+        return staleUntilNanos - nowNanos > 0;
+    }
+
+    long weight() {
+        return (long) body.length + ENTRY_OVERHEAD_BYTES;
+    }
+}
@@ -0,0 +1,187 @@
+
+package com.zapcom.cache;
+
+import com.zapcom.configuration.ResponseCacheProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class ResponseCache implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final String CACHE_NAME = "gateway-responses";
+
+    @Autowired
+    private ResponseCacheProperties properties;
+
+    // Resource path -> variant (query and caller identity) -> response, so writes can drop every variant of a path
+    private final Map<String, Map<String, CachedResponse>> resources = new ConcurrentHashMap<>();
+
+    private final AtomicLong weight = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachedResponse get(String resource, String variant) {
+        Map<String, CachedResponse> variants = resources.get(resource);
+        CachedResponse response = variants != null ? variants.get(variant) : null;
+        if (response == null || !response.isServableStale(System.nanoTime())) {
+            return null;
+        }
+        return response;
+    }
+
+    public CachedResponse put(String resource, String variant, CachedResponse response) {
+        if (response.weight() > properties.getMaxEntrySize().toBytes()) {
+            return null;
+        }
+
+        // Insert under the resource's bin lock so makeRoom cannot drop the variant map concurrently
+        CachedResponse[] previousHolder = new CachedResponse[1];
+        resources.compute(resource, (key, variants) -> {
+            Map<String, CachedResponse> target = variants != null ? variants : new ConcurrentHashMap<>();
+            previousHolder[0] = target.put(variant, response);
+            return target;
+        });
+        CachedResponse previous = previousHolder[0];
+        weight.addAndGet(response.weight() - (previous != null ? previous.weight() : 0L));
+        puts.increment();
+
+        if (weight.get() > properties.getMaxSize().toBytes()) {
+            makeRoom();
+        }
+        return response;
+    }
+
+    // Drops the resource and every ancestor path, e.g. a write to /customers/42 also invalidates /customers
+    public void invalidate(String resource) {
+        String path = resource;
+        while (!path.isEmpty()) {
+            drop(path);
+            int slash = path.lastIndexOf('/');
+            path = slash > 0 ? path.substring(0, slash) : "";
+        }
+    }
+
+    // Also drops every resource below the path, for writes such as bulk updates that change many
+    // resources at once. Walks all cached paths, which is fine for writes that batch many changes.
+    public void invalidateTree(String resource) {
+        invalidate(resource);
+        String descendants = resource + "/";
+        for (String path : resources.keySet()) {
+            if (path.startsWith(descendants)) {
+                drop(path);
+            }
+        }
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordStaleHit() {
+        staleHits.increment();
+    }
+
+    public static String etag(byte[] body) {
+        return "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cache.size", this, cache -> cache.resources.values().stream().mapToLong(Map::size).sum())
+            .tag("cache", CACHE_NAME)
+            .description("The number of cached responses")
+            .register(registry);
+
+        Gauge.builder("gateway.response.cache.bytes", weight, AtomicLong::get)
+            .description("Approximate memory held by cached responses")
+            .baseUnit("bytes")
+            .register(registry);
+
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "hit")
+            .register(registry);
+
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "miss")
+            .register(registry);
+
+        FunctionCounter.builder("cache.gets", staleHits, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "stale")
+            .description("Stale responses served because the circuit breaker was open")
+            .register(registry);
+
+        FunctionCounter.builder("cache.puts", puts, LongAdder::sum)
+            .tag("cache", CACHE_NAME)
+            .register(registry);
+
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+            .tag("cache", CACHE_NAME)
+            .register(registry);
+    }
+
+    private void makeRoom() {
+        long now = System.nanoTime();
+        // Trims a tenth below the budget so a full cache is not scanned again on every put: entries
+        // stay servable for the whole stale TTL, so the first pass rarely frees anything
+        long limit = properties.getMaxSize().toBytes() - properties.getMaxSize().toBytes() / 10;
+
+        // First reclaim entries that can no longer be served even as stale, then anything until under the target
+        for (int pass = 0; pass < 2 && weight.get() > limit; pass++) {
+            Iterator<Map.Entry<String, Map<String, CachedResponse>>> resourceIterator = resources.entrySet().iterator();
+            while (resourceIterator.hasNext() && weight.get() > limit) {
+                Map.Entry<String, Map<String, CachedResponse>> resource = resourceIterator.next();
+                Map<String, CachedResponse> variants = resource.getValue();
+                Iterator<Map.Entry<String, CachedResponse>> iterator = variants.entrySet().iterator();
+                while (iterator.hasNext() && weight.get() > limit) {
+                    Map.Entry<String, CachedResponse> entry = iterator.next();
+                    if (pass == 1 || !entry.getValue().isServableStale(now)) {
+                        evict(variants, entry);
+                    }
+                }
+                resources.computeIfPresent(resource.getKey(), (key, current) -> current.isEmpty() ? null : current);
+            }
+        }
+
+        logger.debug("Response cache trimmed to {} bytes", weight.get());
+    }
+
+    private void drop(String path) {
+        Map<String, CachedResponse> variants = resources.remove(path);
+        if (variants != null) {
+            for (Map.Entry<String, CachedResponse> entry : variants.entrySet()) {
+                evict(variants, entry);
+            }
+        }
+    }
+
+    private void evict(Map<String, CachedResponse> variants, Map.Entry<String, CachedResponse> entry) {
+        // Conditional remove so an entry raced by invalidate and makeRoom is only accounted once
+        if (variants.remove(entry.getKey(), entry.getValue())) {
+            weight.addAndGet(-entry.getValue().weight());
+            evictions.increment();
+        }
+    }
+}
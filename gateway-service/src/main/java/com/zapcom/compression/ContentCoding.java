@@ -0,0 +1,77 @@
+
+package com.zapcom.compression;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Content codings the gateway can produce. Both are zlib deflate streams: gzip uses raw
+ * deflate with its own header and CRC trailer, deflate is the zlib-wrapped format.
+ */
+public enum ContentCoding {
+
+    GZIP("gzip", true),
+    DEFLATE("deflate", false);
+
+    private final String token;
+
+    // Raw deflate without the zlib header, gzip writes its own framing
+    private final boolean nowrap;
+
+    ContentCoding(String token, boolean nowrap) {
+        this.token = token;
+        this.nowrap = nowrap;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public boolean isNowrap() {
+        return nowrap;
+    }
+
+    /**
+     * The coding with the highest q-value in the given Accept-Encoding values, gzip on a tie,
+     * or null when the client accepts neither.
+     */
+    public static ContentCoding negotiate(List<String> acceptEncoding) {
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String value : acceptEncoding) {
+            for (String element : value.split(",")) {
+                String[] parts = element.split(";");
+                String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+                double q = quality(parts);
+                switch (coding) {
+                    case "gzip", "x-gzip" -> gzip = Math.max(gzip, q);
+                    case "deflate" -> deflate = Math.max(deflate, q);
+                    case "*" -> any = Math.max(any, q);
+                    default -> { }
+                }
+            }
+        }
+        // An explicit q-value wins over the wildcard, gzip;q=0 refuses gzip even with *
+        gzip = gzip >= 0 ? gzip : any;
+        deflate = deflate >= 0 ? deflate : any;
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
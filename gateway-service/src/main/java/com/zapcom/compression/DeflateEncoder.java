@@ -0,0 +1,162 @@
+
+package com.zapcom.compression;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming gzip or deflate encoder for one response body. Each buffer is deflated as it
+ * arrives and whatever zlib has produced so far is passed on, so a body is never held in
+ * full. The Deflater comes from a pool and goes back on release(), which may race with a
+ * write in progress when the response is cancelled, hence the locking.
+ */
+public class DeflateEncoder {
+
+    // Magic, CM=deflate, no flags, no mtime, no extra flags, OS unknown
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final int OUTPUT_CHUNK = 8192;
+
+    private final DeflaterPool pool;
+
+    private final CRC32 crc;
+
+    private Deflater deflater;
+
+    private boolean headerWritten;
+
+    private long bytesIn;
+
+    private long bytesOut;
+
+    private long nanos;
+
+    public DeflateEncoder(DeflaterPool pool) {
+        this.pool = pool;
+        this.crc = pool.getCoding() == ContentCoding.GZIP ? new CRC32() : null;
+        this.deflater = pool.borrow();
+    }
+
+    /**
+     * Deflates the buffer, which is released, and returns the output produced so far. That
+     * may be empty while zlib is still filling its window.
+     */
+    public synchronized DataBuffer encode(DataBuffer input, DataBufferFactory bufferFactory) {
+        long start = System.nanoTime();
+        DataBuffer output = bufferFactory.allocateBuffer(OUTPUT_CHUNK);
+        try {
+            checkOpen();
+            writeHeader(output);
+            try (DataBuffer.ByteBufferIterator chunks = input.readableByteBuffers()) {
+                while (chunks.hasNext()) {
+                    ByteBuffer chunk = chunks.next();
+                    bytesIn += chunk.remaining();
+                    if (crc != null) {
+                        crc.update(chunk.duplicate());
+                    }
+                    deflater.setInput(chunk);
+                    while (!deflater.needsInput()) {
+                        deflate(output);
+                    }
+                }
+            }
+            bytesOut += output.readableByteCount();
+            return output;
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(output);
+            throw e;
+        } finally {
+            DataBufferUtils.release(input);
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Flushes what zlib still holds and closes the stream, adding the gzip trailer.
+     */
+    public synchronized DataBuffer finish(DataBufferFactory bufferFactory) {
+        long start = System.nanoTime();
+        DataBuffer output = bufferFactory.allocateBuffer(OUTPUT_CHUNK);
+        try {
+            checkOpen();
+            writeHeader(output);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(output);
+            }
+            if (crc != null) {
+                output.ensureWritable(GZIP_TRAILER_SIZE);
+                writeIntLe(output, (int) crc.getValue());
+                // ISIZE is the uncompressed length modulo 2^32
+                writeIntLe(output, (int) bytesIn);
+            }
+            bytesOut += output.readableByteCount();
+            return output;
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(output);
+            throw e;
+        } finally {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    public synchronized void release() {
+        if (deflater != null) {
+            pool.release(deflater);
+            deflater = null;
+        }
+    }
+
+    public ContentCoding getCoding() {
+        return pool.getCoding();
+    }
+
+    public synchronized long getBytesIn() {
+        return bytesIn;
+    }
+
+    public synchronized long getBytesOut() {
+        return bytesOut;
+    }
+
+    // Time spent in zlib for this body; deflate is pure CPU work on the calling thread
+    public synchronized long getNanos() {
+        return nanos;
+    }
+
+    private void deflate(DataBuffer output) {
+        output.ensureWritable(OUTPUT_CHUNK);
+        try (DataBuffer.ByteBufferIterator writable = output.writableByteBuffers()) {
+            ByteBuffer target = writable.next();
+            int written = deflater.deflate(target, Deflater.NO_FLUSH);
+            output.writePosition(output.writePosition() + written);
+        }
+    }
+
+    private void writeHeader(DataBuffer output) {
+        if (crc != null && !headerWritten) {
+            output.write(GZIP_HEADER);
+            headerWritten = true;
+        }
+    }
+
+    private void checkOpen() {
+        if (deflater == null) {
+            throw new IllegalStateException("Encoder already released");
+        }
+    }
+
+    private static void writeIntLe(DataBuffer output, int value) {
+        output.write((byte) value);
+        output.write((byte) (value >>> 8));
+        output.write((byte) (value >>> 16));
+        output.write((byte) (value >>> 24));
+    }
+}
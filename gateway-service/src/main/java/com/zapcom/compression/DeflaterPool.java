@@ -0,0 +1,74 @@
+
+package com.zapcom.compression;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Idle Deflaters of one coding and level. A Deflater carries a few hundred KB of native
+ * zlib state, so responses borrow one and hand it back reset instead of each allocating
+ * and ending their own.
+ */
+public class DeflaterPool {
+
+    private final ContentCoding coding;
+
+    private final int level;
+
+    private final int maxIdle;
+
+    private final Queue<Deflater> idle = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final LongAdder created = new LongAdder();
+
+    public DeflaterPool(ContentCoding coding, int level, int maxIdle) {
+        this.coding = coding;
+        this.level = level;
+        this.maxIdle = maxIdle;
+    }
+
+    public ContentCoding getCoding() {
+        return coding;
+    }
+
+    public Deflater borrow() {
+        Deflater deflater = idle.poll();
+        if (deflater != null) {
+            idleCount.decrementAndGet();
+            return deflater;
+        }
+        created.increment();
+        return new Deflater(level, coding.isNowrap());
+    }
+
+    public void release(Deflater deflater) {
+        deflater.reset();
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(deflater);
+        } else {
+            idleCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    public void close() {
+        Deflater deflater;
+        while ((deflater = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    public long getCreatedCount() {
+        return created.sum();
+    }
+}
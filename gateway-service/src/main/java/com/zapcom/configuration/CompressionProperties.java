@@ -0,0 +1,74 @@
+
+package com.zapcom.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.compression")
+public class CompressionProperties {
+
+    private boolean enabled = true;
+
+    // Smaller bodies go out as they are, the framing would eat most of the saving
+    private DataSize minSize = DataSize.ofKilobytes(1);
+
+    // zlib level from 1 (fastest) to 9 (smallest)
+    private int level = 6;
+
+    // Compressed media types; wildcards such as text/* and application/*+json are allowed
+    private List<MediaType> mimeTypes = new ArrayList<>(List.of(
+        MediaType.APPLICATION_JSON,
+        MediaType.valueOf("application/*+json"),
+        MediaType.APPLICATION_XML,
+        MediaType.valueOf("text/*"),
+        MediaType.valueOf("application/javascript")));
+
+    // Idle Deflaters kept per encoding; responses beyond that borrow a fresh one
+    private int poolSize = 64;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DataSize getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(DataSize minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public List<MediaType> getMimeTypes() {
+        return mimeTypes;
+    }
+
+    public void setMimeTypes(List<MediaType> mimeTypes) {
+        this.mimeTypes = mimeTypes;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+}
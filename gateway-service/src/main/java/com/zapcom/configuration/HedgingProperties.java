@@ -0,0 +1,109 @@
+
+package com.zapcom.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.hedging")
+public class HedgingProperties {
+
+    private boolean enabled = true;
+
+    // A hedge is sent once the request is slower than this share of recent requests
+    private double percentile = 0.95;
+
+    // Recent requests the percentile is taken over
+    private int window = 1000;
+
+    // Used until a full window of latencies has been seen
+    private Duration initialDelay = Duration.ofMillis(100);
+
+    private Duration minDelay = Duration.ofMillis(5);
+
+    private Duration maxDelay = Duration.ofSeconds(1);
+
+    // Hedges allowed per regular request, e.g. 0.05 keeps the extra load at or below 5%
+    private double budgetRatio = 0.05;
+
+    // Hedges that can be saved up during quiet periods
+    private int maxBudget = 10;
+
+    // Responses up to this size are read in full before racing; larger ones are streamed
+    private DataSize maxBodySize = DataSize.ofMegabytes(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    public void setInitialDelay(Duration initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    public Duration getMinDelay() {
+        return minDelay;
+    }
+
+    public void setMinDelay(Duration minDelay) {
+        this.minDelay = minDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(Duration maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public void setBudgetRatio(double budgetRatio) {
+        this.budgetRatio = budgetRatio;
+    }
+
+    public int getMaxBudget() {
+        return maxBudget;
+    }
+
+    public void setMaxBudget(int maxBudget) {
+        this.maxBudget = maxBudget;
+    }
+
+    public DataSize getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public void setMaxBodySize(DataSize maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+}
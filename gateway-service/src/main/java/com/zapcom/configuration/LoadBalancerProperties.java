@@ -0,0 +1,49 @@
+
+package com.zapcom.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.load-balancer")
+public class LoadBalancerProperties {
+
+    // Upstream instances per service, addressed from routes as lb://<service>
+    private Map<String, List<URI>> services = new HashMap<>();
+
+    // Time constant of the per-instance latency average: older samples lose weight over about this long
+    private Duration decay = Duration.ofSeconds(10);
+
+    // Latency recorded for a failed call, so an instance that fails fast does not look fast
+    private Duration failurePenalty = Duration.ofSeconds(1);
+
+    public Map<String, List<URI>> getServices() {
+        return services;
+    }
+
+    public void setServices(Map<String, List<URI>> services) {
+        this.services = services;
+    }
+
+    public Duration getDecay() {
+        return decay;
+    }
+
+    public void setDecay(Duration decay) {
+        this.decay = decay;
+    }
+
+    public Duration getFailurePenalty() {
+        return failurePenalty;
+    }
+
+    public void setFailurePenalty(Duration failurePenalty) {
+        this.failurePenalty = failurePenalty;
+    }
+}
@@ -0,0 +1,140 @@
+
+package com.zapcom.configuration;
+
+import com.zapcom.limit.Priority;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.load-shedding")
+public class LoadSheddingProperties {
+
+    private boolean enabled = true;
+
+    // How often event-loop lag and in-flight requests are sampled and the shedding level adjusted
+    private Duration probeInterval = Duration.ofMillis(100);
+
+    // Overloaded once a task waits this long in an event loop's queue
+    private Duration lagThreshold = Duration.ofMillis(50);
+
+    // Overloaded once this many admitted requests are in flight across all routes
+    private int pendingThreshold = 2000;
+
+    // Healthy time required before shedding drops back one level
+    private Duration recoveryInterval = Duration.ofSeconds(2);
+
+    // Sent with 503 responses to shed requests
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    // Class for requests no rule matches
+    private Priority defaultPriority = Priority.NORMAL;
+
+    // First matching rule wins
+    private List<Rule> priorities = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getProbeInterval() {
+        return probeInterval;
+    }
+
+    public void setProbeInterval(Duration probeInterval) {
+        this.probeInterval = probeInterval;
+    }
+
+    public Duration getLagThreshold() {
+        return lagThreshold;
+    }
+
+    public void setLagThreshold(Duration lagThreshold) {
+        this.lagThreshold = lagThreshold;
+    }
+
+    public int getPendingThreshold() {
+        return pendingThreshold;
+    }
+
+    public void setPendingThreshold(int pendingThreshold) {
+        this.pendingThreshold = pendingThreshold;
+    }
+
+    public Duration getRecoveryInterval() {
+        return recoveryInterval;
+    }
+
+    public void setRecoveryInterval(Duration recoveryInterval) {
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public Priority getDefaultPriority() {
+        return defaultPriority;
+    }
+
+    public void setDefaultPriority(Priority defaultPriority) {
+        this.defaultPriority = defaultPriority;
+    }
+
+    public List<Rule> getPriorities() {
+        return priorities;
+    }
+
+    public void setPriorities(List<Rule> priorities) {
+        this.priorities = priorities;
+    }
+
+    public static class Rule {
+
+        // Route id; unset matches every route
+        private String route;
+
+        // Empty matches every method
+        private Set<String> methods = Set.of();
+
+        private Priority priority = Priority.NORMAL;
+
+        public String getRoute() {
+            return route;
+        }
+
+        public void setRoute(String route) {
+            this.route = route;
+        }
+
+        public Set<String> getMethods() {
+            return methods;
+        }
+
+        public void setMethods(Set<String> methods) {
+            this.methods = methods.stream().map(method -> method.toUpperCase(Locale.ROOT)).collect(Collectors.toSet());
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public void setPriority(Priority priority) {
+            this.priority = priority;
+        }
+    }
+}
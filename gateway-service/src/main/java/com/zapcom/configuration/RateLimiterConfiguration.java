@@ -1,24 +1,84 @@
 
 package com.zapcom.configuration;
 
+import com.zapcom.ratelimit.HybridRateLimiter;
+import com.zapcom.ratelimit.LocalRateLimiter;
+import com.zapcom.ratelimit.PrincipalKeyResolver;
+import com.zapcom.ratelimit.RedisTokenLeaseStore;
+import com.zapcom.ratelimit.TieredRateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
 import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 @Configuration
 public class RateLimiterConfiguration {
 
+    // Requests per second (replenishRate) and burst capacity for routes without their own limits
+    @Value("${gateway.rate-limiter.replenish-rate:10}")
+    private int replenishRate;
+
+    @Value("${gateway.rate-limiter.burst-capacity:20}")
+    private int burstCapacity;
+
     @Bean
     public KeyResolver ipKeyResolver() {
         return exchange -> Mono.just(
             exchange.getRequest().getRemoteAddress().getAddress().getHostAddress());
     }
+
+    @Bean
+    @Primary
+    public PrincipalKeyResolver principalKeyResolver() {
+        // Primary so it is also the RequestRateLimiter default for routes that name no key-resolver
+        return new PrincipalKeyResolver();
+    }
+
+    // Referenced by routes as rate-limiter: "#{@tieredRateLimiter}"; kept out of autowiring so the
+    // backend below stays the single RateLimiter the gateway injects, and the one wrapped here
+    @Bean(autowireCandidate = false)
+    public TieredRateLimiter tieredRateLimiter(RateLimiter<RedisRateLimiter.Config> rateLimiter,
+                                               RateLimiterProperties properties) {
+        return new TieredRateLimiter(rateLimiter, properties);
+    }
     
     @Bean
+    @ConditionalOnProperty(name = "gateway.rate-limiter.mode", havingValue = "redis", matchIfMissing = true)
     public RedisRateLimiter redisRateLimiter() {
-        // Configure requests per second (replenishRate) and burst capacity
-        return new RedisRateLimiter(10, 20);
+        return new RedisRateLimiter(replenishRate, burstCapacity);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "gateway.rate-limiter.mode", havingValue = "local")
+    public LocalRateLimiter localRateLimiter(
+            ConfigurationService configurationService,
+            @Value("${gateway.rate-limiter.local.stripes:16}") int stripes,
+            @Value("${gateway.rate-limiter.local.idle-timeout:60s}") Duration idleTimeout) {
+        // Primary so RequestRateLimiter picks it over the RedisRateLimiter the gateway auto-configures
+        return new LocalRateLimiter(replenishRate, burstCapacity, stripes, idleTimeout, configurationService);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "gateway.rate-limiter.mode", havingValue = "hybrid")
+    public HybridRateLimiter hybridRateLimiter(
+            ReactiveStringRedisTemplate redisTemplate,
+            ConfigurationService configurationService,
+            @Value("${gateway.rate-limiter.hybrid.lease-size:5}") int leaseSize,
+            @Value("${gateway.rate-limiter.hybrid.renew-threshold:0.2}") double renewThreshold,
+            @Value("${gateway.rate-limiter.hybrid.lease-ttl:1s}") Duration leaseTtl) {
+        // Shares the Redis connection RedisRateLimiter uses, but only talks to it once per lease
+        return new HybridRateLimiter(replenishRate, burstCapacity, new RedisTokenLeaseStore(redisTemplate),
+            leaseSize, renewThreshold, leaseTtl, configurationService);
     }
 }
@@ -0,0 +1,95 @@
+
+package com.zapcom.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.response-cache")
+public class ResponseCacheProperties {
+
+    // Upper bound for all cached bodies and headers together
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+
+    // Larger responses are passed through without being cached
+    private DataSize maxEntrySize = DataSize.ofKilobytes(256);
+
+    private Duration defaultTtl = Duration.ofSeconds(30);
+
+    // How long past its TTL an entry may still be served while the circuit breaker is open
+    private Duration staleTtl = Duration.ofMinutes(5);
+
+    // Per-route TTLs keyed by route id, falling back to defaultTtl
+    private Map<String, Duration> ttl = new HashMap<>();
+
+    // Route id -> path whose whole subtree writes through the route invalidate, for routes such as
+    // bulk endpoints whose writes change resources other than the one they are sent to
+    private Map<String, String> invalidateTree = new HashMap<>();
+
+    private String circuitBreaker = "defaultCircuitBreaker";
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public DataSize getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public void setMaxEntrySize(DataSize maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public Duration getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    public void setDefaultTtl(Duration defaultTtl) {
+        this.defaultTtl = defaultTtl;
+    }
+
+    public Duration getStaleTtl() {
+        return staleTtl;
+    }
+
+    public void setStaleTtl(Duration staleTtl) {
+        this.staleTtl = staleTtl;
+    }
+
+    public Map<String, Duration> getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Map<String, Duration> ttl) {
+        this.ttl = ttl;
+    }
+
+    public Map<String, String> getInvalidateTree() {
+        return invalidateTree;
+    }
+
+    public void setInvalidateTree(Map<String, String> invalidateTree) {
+        this.invalidateTree = invalidateTree;
+    }
+
+    public String getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(String circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public Duration ttlFor(String routeId) {
+        return ttl.getOrDefault(routeId, defaultTtl);
+    }
+}
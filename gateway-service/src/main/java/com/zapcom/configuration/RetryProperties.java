@@ -0,0 +1,100 @@
+
+package com.zapcom.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.retry")
+public class RetryProperties {
+
+    private boolean enabled = true;
+
+    // Upper bound per request; the budget usually allows far fewer under sustained failure
+    private int maxRetries = 3;
+
+    private List<HttpMethod> methods = new ArrayList<>(List.of(HttpMethod.GET));
+
+    // Retries earned per successful request, e.g. 0.1 allows one retry per ten successes
+    private double budgetRatio = 0.1;
+
+    // Retries that can be saved up, so a quiet route can still absorb a short blip
+    private int maxBudget = 10;
+
+    // Backoff before retry n is a random value up to min(maxBackoff, firstBackoff * 2^(n-1))
+    private Duration firstBackoff = Duration.ofMillis(50);
+
+    private Duration maxBackoff = Duration.ofMillis(500);
+
+    // No retries while this breaker is not closed
+    private String circuitBreaker = "defaultCircuitBreaker";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public List<HttpMethod> getMethods() {
+        return methods;
+    }
+
+    public void setMethods(List<HttpMethod> methods) {
+        this.methods = methods;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public void setBudgetRatio(double budgetRatio) {
+        this.budgetRatio = budgetRatio;
+    }
+
+    public int getMaxBudget() {
+        return maxBudget;
+    }
+
+    public void setMaxBudget(int maxBudget) {
+        this.maxBudget = maxBudget;
+    }
+
+    public Duration getFirstBackoff() {
+        return firstBackoff;
+    }
+
+    public void setFirstBackoff(Duration firstBackoff) {
+        this.firstBackoff = firstBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(Duration maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public String getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(String circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+}
@@ -0,0 +1,120 @@
+
+package com.zapcom.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.route-table")
+public class RouteTableProperties {
+
+    // Optional YAML or JSON file with a top-level routes list in the same format as below. While it
+    // exists it replaces these routes, and it is reloaded whenever it changes.
+    private String file;
+
+    // How often the file is checked for changes
+    private Duration watchInterval = Duration.ofSeconds(5);
+
+    private List<RouteSpec> routes = new ArrayList<>();
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public Duration getWatchInterval() {
+        return watchInterval;
+    }
+
+    public void setWatchInterval(Duration watchInterval) {
+        this.watchInterval = watchInterval;
+    }
+
+    public List<RouteSpec> getRoutes() {
+        return routes;
+    }
+
+    public void setRoutes(List<RouteSpec> routes) {
+        this.routes = routes;
+    }
+
+    public static class RouteSpec {
+
+        private String id;
+
+        private URI uri;
+
+        // Requests whose path is this prefix or continues it with a '/' take the route; the longest wins
+        private String prefix;
+
+        // Replaces the matched prefix before forwarding, e.g. /api/customers/42 -> /customers/42.
+        // Unset forwards the path unchanged.
+        private String rewritePrefix;
+
+        // GatewayFilter beans by class name, or filter factories with arguments as in spring.cloud.gateway.routes.
+        // spring.cloud.gateway.default-filters are applied in front of these.
+        private List<FilterDefinition> filters = new ArrayList<>();
+
+        // Route metadata, e.g. connect-timeout and response-timeout
+        private Map<String, Object> metadata = new HashMap<>();
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public URI getUri() {
+            return uri;
+        }
+
+        public void setUri(URI uri) {
+            this.uri = uri;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getRewritePrefix() {
+            return rewritePrefix;
+        }
+
+        public void setRewritePrefix(String rewritePrefix) {
+            this.rewritePrefix = rewritePrefix;
+        }
+
+        public List<FilterDefinition> getFilters() {
+            return filters;
+        }
+
+        public void setFilters(List<FilterDefinition> filters) {
+            this.filters = filters;
+        }
+
+        public Map<String, Object> getMetadata() {
+            return metadata;
+        }
+
+        public void setMetadata(Map<String, Object> metadata) {
+            this.metadata = metadata;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+
+package com.zapcom.configuration;
+
+import com.zapcom.filter.UpstreamRoutingFilter;
+import com.zapcom.transport.UpstreamClients;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+
+/**
+ * Routing with per-route upstream clients. Takes over once the stock NettyRoutingFilter is
+ * switched off, which also drops the NettyWriteResponseFilter registered alongside it.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.cloud.gateway.global-filter.netty-routing.enabled", havingValue = "false")
+public class UpstreamTransportConfiguration {
+
+    @Bean
+    public UpstreamRoutingFilter upstreamRoutingFilter(HttpClient httpClient,
+                                                       ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                                                       HttpClientProperties properties,
+                                                       UpstreamClients upstreamClients) {
+        return new UpstreamRoutingFilter(httpClient, headersFilters, properties, upstreamClients);
+    }
+
+    @Bean
+    public NettyWriteResponseFilter upstreamWriteResponseFilter(GatewayProperties gatewayProperties) {
+        return new NettyWriteResponseFilter(gatewayProperties.getStreamingMediaTypes());
+    }
+}
@@ -0,0 +1,116 @@
+
+package com.zapcom.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpProtocol;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.upstream-transport")
+public class UpstreamTransportProperties {
+
+    // Connection pools keyed by route id; other routes share the spring.cloud.gateway.httpclient pool
+    private Map<String, Pool> routes = new HashMap<>();
+
+    public Map<String, Pool> getRoutes() {
+        return routes;
+    }
+
+    public void setRoutes(Map<String, Pool> routes) {
+        this.routes = routes;
+    }
+
+    public static class Pool {
+
+        // HTTP11, or H2C to multiplex requests over a few prior-knowledge HTTP/2 cleartext connections
+        private HttpProtocol protocol = HttpProtocol.HTTP11;
+
+        // Per upstream instance
+        private int maxConnections = 50;
+
+        // Streams per h2c connection; the upstream's own SETTINGS_MAX_CONCURRENT_STREAMS still applies
+        private long maxConcurrentStreams = 100;
+
+        // Requests that may wait for a connection or stream, beyond that they fail at once
+        private int maxPendingAcquires = 1000;
+
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+        // Idle connections are closed after this long, before the upstream's keep-alive timeout drops them
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        // Unset keeps connections for as long as they are used
+        private Duration maxLifeTime;
+
+        // How often idle and expired connections are closed in the background
+        private Duration evictionInterval = Duration.ofSeconds(10);
+
+        public HttpProtocol getProtocol() {
+            return protocol;
+        }
+
+        public void setProtocol(HttpProtocol protocol) {
+            this.protocol = protocol;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public long getMaxConcurrentStreams() {
+            return maxConcurrentStreams;
+        }
+
+        public void setMaxConcurrentStreams(long maxConcurrentStreams) {
+            this.maxConcurrentStreams = maxConcurrentStreams;
+        }
+
+        public int getMaxPendingAcquires() {
+            return maxPendingAcquires;
+        }
+
+        public void setMaxPendingAcquires(int maxPendingAcquires) {
+            this.maxPendingAcquires = maxPendingAcquires;
+        }
+
+        public Duration getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+
+        public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+
+        public Duration getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public Duration getMaxLifeTime() {
+            return maxLifeTime;
+        }
+
+        public void setMaxLifeTime(Duration maxLifeTime) {
+            this.maxLifeTime = maxLifeTime;
+        }
+
+        public Duration getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+
+package com.zapcom.exception;
+
+import com.zapcom.utils.Constants;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Expected ways a request is turned away before it reaches an upstream. Each carries its error
+ * body already encoded, in the shape GlobalExceptionHandler renders, up to the request path.
+ */
+public enum Rejection {
+
+    MISSING_AUTHORIZATION(HttpStatus.UNAUTHORIZED, Constants.ERR_UNAUTHORIZED, "Missing authorization header"),
+    INVALID_AUTHORIZATION_FORMAT(HttpStatus.UNAUTHORIZED, Constants.ERR_UNAUTHORIZED, "Invalid authorization header format"),
+    TOKEN_EXPIRED(HttpStatus.UNAUTHORIZED, Constants.ERR_UNAUTHORIZED, "Token has expired"),
+    MALFORMED_TOKEN(HttpStatus.UNAUTHORIZED, Constants.ERR_UNAUTHORIZED, "Malformed token"),
+    INVALID_SIGNATURE(HttpStatus.UNAUTHORIZED, Constants.ERR_UNAUTHORIZED, "Invalid token signature"),
+    UNSUPPORTED_TOKEN(HttpStatus.UNAUTHORIZED, Constants.ERR_UNAUTHORIZED, "Unsupported token format"),
+    INVALID_TOKEN(HttpStatus.UNAUTHORIZED, Constants.ERR_UNAUTHORIZED, "Invalid or expired token");
+
+    private final HttpStatus status;
+
+    private final String code;
+
+    private final String message;
+
+    // {"status":"error","code":...,"message":...,"path":" and "}, the path goes in between
+    private final byte[] bodyPrefix;
+
+    private final byte[] bodySuffix = "\"}".getBytes(StandardCharsets.US_ASCII);
+
+    Rejection(HttpStatus status, String code, String message) {
+        this.status = status;
+        this.code = code;
+        this.message = message;
+        // Codes and messages are plain ASCII without quotes or backslashes, so they need no escaping
+        this.bodyPrefix = ("{\"status\":\"error\",\"code\":\"" + code + "\",\"message\":\"" + message + "\",\"path\":\"")
+            .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    // Lower case reason, as it is tagged on the rejection counter
+    public String getReason() {
+        return name().toLowerCase();
+    }
+
+    byte[] getBodyPrefix() {
+        return bodyPrefix;
+    }
+
+    byte[] getBodySuffix() {
+        return bodySuffix;
+    }
+}
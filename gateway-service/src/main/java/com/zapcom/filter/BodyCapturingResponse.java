@@ -0,0 +1,76 @@
+
+package com.zapcom.filter;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Streams a response body through untouched while keeping a copy of it. The copy is handed
+ * to {@link #onBodyCaptured(byte[])} once the body completes, unless it outgrew the limit.
+ */
+abstract class BodyCapturingResponse extends ServerHttpResponseDecorator {
+
+    private final long maxBytes;
+
+    // Buffers of one response arrive sequentially, so no synchronization is needed
+    private ByteArrayOutputStream copy;
+
+    // Headers as they were when the body started, before outer decorators such as the
+    // compression filter rewrote the shared headers for the wire
+    private HttpHeaders headersAtWrite;
+
+    BodyCapturingResponse(ServerHttpResponse delegate, long maxBytes) {
+        super(delegate);
+        this.maxBytes = maxBytes;
+    }
+
+    abstract void onBodyCaptured(byte[] body);
+
+    Mono<Void> writeAndCapture(Publisher<? extends DataBuffer> body) {
+        copy = new ByteArrayOutputStream();
+        headersAtWrite = new HttpHeaders();
+        headersAtWrite.addAll(getHeaders());
+        return super.writeWith(Flux.from(body)
+            .doOnNext(this::copy)
+            .doOnComplete(() -> {
+                if (copy != null) {
+                    onBodyCaptured(copy.toByteArray());
+                }
+            }));
+    }
+
+    // Snapshot of the response headers without those describing one particular transfer
+    HttpHeaders copyHeaders(Collection<String> excluded) {
+        HttpHeaders headers = new HttpHeaders();
+        (headersAtWrite != null ? headersAtWrite : getHeaders()).forEach((name, values) -> {
+            if (excluded.stream().noneMatch(name::equalsIgnoreCase)) {
+                headers.addAll(name, values);
+            }
+        });
+        return headers;
+    }
+
+    private void copy(DataBuffer buffer) {
+        if (copy == null) {
+            return;
+        }
+        int length = buffer.readableByteCount();
+        if (copy.size() + length > maxBytes) {
+            // Too large to keep, stop copying and let the rest stream through
+            copy = null;
+            return;
+        }
+        byte[] chunk = new byte[length];
+        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(chunk), 0, length);
+        copy.write(chunk, 0, length);
+    }
+}
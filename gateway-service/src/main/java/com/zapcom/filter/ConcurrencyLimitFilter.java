@@ -0,0 +1,113 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.configuration.ConcurrencyLimitProperties;
+import com.zapcom.limit.AdaptiveConcurrencyLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caps the requests each route has in flight with an {@link AdaptiveConcurrencyLimit} and
+ * rejects the excess straight away with 503, instead of queueing it onto a slow upstream.
+ */
+@Component
+public class ConcurrencyLimitFilter implements GlobalFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    @Autowired
+    private ConcurrencyLimitProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, RouteLimit> limits = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null) {
+            return chain.filter(exchange);
+        }
+
+        RouteLimit routeLimit = limits.computeIfAbsent(route.getId(), RouteLimit::new);
+        AdaptiveConcurrencyLimit limit = routeLimit.limit;
+        if (!limit.tryAcquire()) {
+            routeLimit.rejected.increment();
+            logger.debug("Rejecting request on route {} over concurrency limit {}", route.getId(), limit.getLimit());
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1L, properties.getRetryAfter().toSeconds())));
+            return response.setComplete();
+        }
+
+        long startNanos = System.nanoTime();
+        return chain.filter(exchange)
+            .doFinally(signalType -> {
+                if (signalType == SignalType.CANCEL) {
+                    limit.abandon();
+                    return;
+                }
+                limit.release(System.nanoTime() - startNanos, isDropped(exchange, signalType));
+            });
+    }
+
+    private static boolean isDropped(ServerWebExchange exchange, SignalType signalType) {
+        // The CircuitBreaker filter turns upstream failures into a forward to /fallback, which answers 200
+        if (signalType == SignalType.ON_ERROR
+                || exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR) != null) {
+            return true;
+        }
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        return status != null && status.is5xxServerError();
+    }
+
+    @Override
+    public int getOrder() {
+        // After auth, the response cache and coalescing, so only requests that will reach the upstream take a slot
+        return -20;
+    }
+
+    private final class RouteLimit {
+        private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties);
+        private final Counter rejected;
+
+        private RouteLimit(String routeId) {
+            // Route ids come from configuration, so tag cardinality is bounded by the route table
+            Gauge.builder("gateway.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .tag("route", routeId)
+                .description("Requests the route may currently have in flight")
+                .register(meterRegistry);
+
+            Gauge.builder("gateway.concurrency.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .tag("route", routeId)
+                .register(meterRegistry);
+
+            this.rejected = Counter.builder("gateway.concurrency.rejected")
+                .tag("route", routeId)
+                .description("Requests rejected with 503 because the route was at its concurrency limit")
+                .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.configuration.HedgingProperties;
+import com.zapcom.limit.RequestBudget;
+import com.zapcom.loadbalancer.UpstreamBalancer;
+import com.zapcom.loadbalancer.UpstreamInstance;
+import com.zapcom.transport.UpstreamClients;
+import com.zapcom.utils.Constants;
+import com.zapcom.utils.LatencyWindow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.Connection;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedged GETs: routes the request itself in place of the NettyRoutingFilter and, when the
+ * chosen instance has not answered within a recent latency percentile, sends the same
+ * request to another instance. The first response wins and the other call is cancelled. A
+ * primary that fails while its hedge is out waits for the hedge, which may still answer.
+ * Hedges are paid for from a per-route budget earned by regular requests, so they cannot
+ * add more than the configured share of extra load.
+ *
+ * Responses up to gateway.hedging.max-body-size are read in full before they compete.
+ * Larger ones, or ones of unknown length, win as soon as their headers arrive and are
+ * streamed by the NettyWriteResponseFilter like any unhedged response.
+ */
+@Component
+public class HedgingFilter implements GatewayFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgingFilter.class);
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    @Autowired
+    private HedgingProperties properties;
+
+    @Autowired
+    private UpstreamBalancer balancer;
+
+    @Autowired
+    private UpstreamClients upstreamClients;
+
+    @Autowired
+    private ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, RouteHedging> routes = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        UpstreamInstance primary = exchange.getAttribute(Constants.UPSTREAM_INSTANCE_ATTR);
+        if (!properties.isEnabled() || url == null || route == null || primary == null
+                || !HttpMethod.GET.equals(exchange.getRequest().getMethod())
+                || ServerWebExchangeUtils.isAlreadyRouted(exchange)) {
+            return chain.filter(exchange);
+        }
+        ServerWebExchangeUtils.setAlreadyRouted(exchange);
+
+        RouteHedging hedging = routes.computeIfAbsent(route.getId(), RouteHedging::new);
+        hedging.budget.deposit();
+
+        HttpHeaders requestHeaders = HttpHeadersFilter.filterRequest(headersFiltersProvider.getIfAvailable(), exchange);
+        long startNanos = System.nanoTime();
+        Race race = new Race();
+
+        Mono<UpstreamResponse> primaryCall = send(exchange, route, url, requestHeaders, false)
+            .doOnNext(response -> hedging.latency.record(System.nanoTime() - startNanos))
+            .doOnNext(race::arrived)
+            .onErrorResume(error -> race.hedgeSent
+                ? race.hedgeFailed.asMono().then(Mono.error(error))
+                : Mono.error(error));
+        Mono<UpstreamResponse> hedgeCall = Mono.delay(hedging.delay())
+            .flatMap(tick -> hedge(exchange, route, url, requestHeaders, primary, hedging, race));
+
+        // First signal wins. The hedge never fails, and a primary failing before a hedge went out, or
+        // after it failed too, is left to retries and the circuit breaker
+        return Mono.firstWithSignal(primaryCall, hedgeCall)
+            .doOnCancel(() -> race.decide(null))
+            .flatMap(response -> {
+                race.decide(response);
+                if (response.hedged) {
+                    hedging.won.increment();
+                    // The window tracks the primary's latency, which the hedge's must not stand in
+                    // for: that would pull the delay down whenever the route slows. All that is known
+                    // is that the primary was slower, so it counts at the ceiling the delay is
+                    // clamped to, which leaves the percentile where the true latencies put it.
+                    hedging.latency.record(properties.getMaxDelay().toNanos());
+                }
+                return write(exchange, response);
+            });
+    }
+
+    @Override
+    public int getOrder() {
+        // Takes the place of the NettyRoutingFilter, after the balancer picked the primary instance
+        return NettyRoutingFilter.ORDER - 1;
+    }
+
+    private Mono<UpstreamResponse> hedge(ServerWebExchange exchange, Route route, URI url, HttpHeaders requestHeaders,
+                                         UpstreamInstance primary, RouteHedging hedging, Race race) {
+        UpstreamInstance instance = balancer.chooseOther(primary);
+        if (instance == null) {
+            return Mono.never();
+        }
+        if (!hedging.budget.tryWithdraw()) {
+            hedging.skipped.increment();
+            return Mono.never();
+        }
+        hedging.sent.increment();
+        race.hedgeSent = true;
+
+        URI target = instance.getUri();
+        URI hedgeUrl = UriComponentsBuilder.fromUri(url)
+            .scheme(target.getScheme())
+            .host(target.getHost())
+            .port(target.getPort())
+            .build(true)
+            .toUri();
+        logger.debug("Hedging {} to {}", url, target);
+
+        long startNanos = System.nanoTime();
+        instance.start();
+        return send(exchange, route, hedgeUrl, requestHeaders, true)
+            .doOnNext(response -> {
+                long latency = System.nanoTime() - startNanos;
+                instance.complete(response.status.is5xxServerError()
+                    ? Math.max(latency, balancer.failurePenaltyNanos()) : latency);
+            })
+            .doOnNext(race::arrived)
+            .doOnCancel(instance::abandon)
+            .onErrorResume(error -> {
+                instance.complete(Math.max(System.nanoTime() - startNanos, balancer.failurePenaltyNanos()));
+                logger.debug("Hedged request to {} failed: {}", target, error.getMessage());
+                race.hedgeFailed.tryEmitEmpty();
+                return Mono.never();
+            });
+    }
+
+    private Mono<UpstreamResponse> send(ServerWebExchange exchange, Route route, URI url, HttpHeaders requestHeaders,
+                                        boolean hedged) {
+        boolean preserveHost = exchange.getAttributeOrDefault(ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE, false);
+        String host = exchange.getRequest().getHeaders().getFirst(HttpHeaders.HOST);
+        return upstreamClients.get(route)
+            .headers(headers -> {
+                requestHeaders.forEach(headers::set);
+                headers.remove(HttpHeaders.HOST);
+                if (preserveHost && host != null) {
+                    headers.set(HttpHeaders.HOST, host);
+                }
+            })
+            .get()
+            .uri(url.toASCIIString())
+            .responseConnection((response, connection) -> {
+                HttpStatusCode status = HttpStatusCode.valueOf(response.status().code());
+                HttpHeaders headers = new HttpHeaders();
+                response.responseHeaders().forEach(entry -> headers.add(entry.getKey(), entry.getValue()));
+                long length = headers.getContentLength();
+                if (length < 0 || length > properties.getMaxBodySize().toBytes()) {
+                    return Mono.just(new UpstreamResponse(status, headers, null, connection, hedged));
+                }
+                return connection.inbound().receive().aggregate().asByteArray()
+                    .defaultIfEmpty(EMPTY_BODY)
+                    .map(bytes -> new UpstreamResponse(status, headers, bytes, null, hedged));
+            })
+            .next();
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, UpstreamResponse upstream) {
+        ServerHttpResponse response = exchange.getResponse();
+        String contentType = upstream.headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        if (contentType != null) {
+            exchange.getAttributes().put(ServerWebExchangeUtils.ORIGINAL_RESPONSE_CONTENT_TYPE_ATTR, contentType);
+        }
+        HttpHeaders filtered = HttpHeadersFilter.filter(headersFiltersProvider.getIfAvailable(), upstream.headers,
+            exchange, HttpHeadersFilter.Type.RESPONSE);
+
+        response.setStatusCode(upstream.status);
+        response.getHeaders().addAll(filtered);
+        if (upstream.connection != null) {
+            // Left for the NettyWriteResponseFilter to stream, as after the NettyRoutingFilter
+            exchange.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR, upstream.connection);
+            return Mono.empty();
+        }
+        // The body was read in full, so it goes out with a length rather than chunked
+        response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+        response.getHeaders().setContentLength(upstream.body.length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(upstream.body)));
+    }
+
+    private static final class UpstreamResponse {
+        private final HttpStatusCode status;
+        private final HttpHeaders headers;
+        // The body when it was read in full, otherwise the connection it is still to be read from
+        private final byte[] body;
+        private final Connection connection;
+        private final boolean hedged;
+
+        private UpstreamResponse(HttpStatusCode status, HttpHeaders headers, byte[] body, Connection connection,
+                                 boolean hedged) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.connection = connection;
+            this.hedged = hedged;
+        }
+    }
+
+    // One request's primary call and hedge
+    private static final class Race {
+        // Whether the hedge went out, so a failing primary waits only when there is a hedge to wait for
+        private volatile boolean hedgeSent;
+        private final Sinks.Empty<Void> hedgeFailed = Sinks.empty();
+        // Responses that arrived before the winner was known, and the winner once it is
+        private UpstreamResponse first;
+        private UpstreamResponse second;
+        private boolean decided;
+        private UpstreamResponse winner;
+
+        // Both calls can answer at once, and the race passes over the loser's response without a
+        // word, so each response is noted here to have its connection closed if it loses
+        private synchronized void arrived(UpstreamResponse response) {
+            if (decided) {
+                closeUnlessWinner(response);
+            } else if (first == null) {
+                first = response;
+            } else {
+                second = response;
+            }
+        }
+
+        // The response that won, or null when the race was cancelled and none is written
+        private synchronized void decide(UpstreamResponse response) {
+            if (decided) {
+                return;
+            }
+            decided = true;
+            winner = response;
+            closeUnlessWinner(first);
+            closeUnlessWinner(second);
+            first = null;
+            second = null;
+        }
+
+        private void closeUnlessWinner(UpstreamResponse response) {
+            // A response read in full has already given its connection back
+            if (response != null && response != winner && response.connection != null) {
+                response.connection.dispose();
+            }
+        }
+    }
+
+    private final class RouteHedging {
+        private final RequestBudget budget = new RequestBudget(properties.getBudgetRatio(), properties.getMaxBudget());
+        private final LatencyWindow latency = new LatencyWindow(properties.getWindow(), properties.getPercentile(),
+            properties.getInitialDelay().toNanos());
+        private final Counter sent;
+        private final Counter won;
+        private final Counter skipped;
+
+        private RouteHedging(String routeId) {
+            // Win rate is won / sent
+            this.sent = register(routeId, "sent", "Hedged requests sent to a second instance");
+            this.won = register(routeId, "won", "Hedged requests that answered before the original request");
+            this.skipped = register(routeId, "skipped", "Hedges not sent because the route's hedge budget was spent");
+
+            TimeGauge.builder("gateway.hedge.delay", this, TimeUnit.NANOSECONDS, hedging -> hedging.delay().toNanos())
+                .tag("route", routeId)
+                .description("How long a request may take before it is hedged")
+                .register(meterRegistry);
+
+            Gauge.builder("gateway.hedge.budget", budget, RequestBudget::getTokens)
+                .tag("route", routeId)
+                .description("Hedges the route can currently afford")
+                .register(meterRegistry);
+        }
+
+        private Duration delay() {
+            long nanos = Math.max(properties.getMinDelay().toNanos(),
+                Math.min(properties.getMaxDelay().toNanos(), latency.getPercentileNanos()));
+            return Duration.ofNanos(nanos);
+        }
+
+        private Counter register(String routeId, String result, String description) {
+            return Counter.builder("gateway.hedge.requests")
+                .tag("route", routeId)
+                .tag("result", result)
+                .description(description)
+                .register(meterRegistry);
+        }
+    }
+}
@@ -1,20 +1,27 @@
 
 package com.zapcom.filter;
 
-import com.zapcom.exception.ApiGatewayException;
+import com.zapcom.exception.Rejection;
+import com.zapcom.exception.RejectionWriter;
 import com.zapcom.utils.ApiGatewayUtils;
 import com.zapcom.utils.Constants;
+import com.zapcom.utils.PathPrefixMatcher;
+import com.zapcom.utils.TokenCheck;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.security.SignatureException;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.Ordered;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
@@ -24,79 +31,118 @@ import reactor.core.publisher.Mono;
 import java.util.List;
 
 @Component
-public class JwtAuthFilter implements GatewayFilter {
+public class JwtAuthFilter implements GatewayFilter, Ordered {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthFilter.class);
 
     @Autowired
     private ApiGatewayUtils utils;
 
+    @Autowired
+    private RejectionWriter rejections;
+
+    @Value("${jwt.open-endpoints:/api/auth/login,/api/auth/register,/api/auth/token/refresh}")
+    private List<String> openApiEndpoints;
+
+    // Compiled once from configuration so the per-request check is a single allocation-free trie walk
+    private PathPrefixMatcher openApiMatcher;
+
+    @PostConstruct
+    public void compileOpenApiEndpoints() {
+        openApiMatcher = PathPrefixMatcher.compile(openApiEndpoints);
+        logger.info("Authentication disabled for path prefixes: {}", openApiEndpoints);
+    }
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
-        String path = request.getPath().toString();
+        String path = request.getPath().value();
         
         logger.debug("Processing request to path: {}", path);
         
         // Check if this path should be excluded from authentication
-        if (shouldSkipAuth(path)) {
+        if (openApiMatcher.matches(path)) {
             logger.debug("Skipping authentication for path: {}", path);
             return chain.filter(exchange);
         }
         
-        if (!request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)) {
-            logger.error("Missing authorization header for path: {}", path);
-            throw new ApiGatewayException("Missing authorization header", "UNAUTHORIZED");
+        // Expected failures are answered with a pre-encoded body and counted by reason rather than
+        // thrown, so a flood of bad tokens costs neither stack traces nor error serialization
+        String authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null) {
+            logger.debug("Missing authorization header for path: {}", path);
+            return rejections.reject(exchange, Rejection.MISSING_AUTHORIZATION);
         }
 
-        String authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            logger.error("Invalid authorization header format: {}", authHeader);
-            throw new ApiGatewayException("Invalid authorization header format", "UNAUTHORIZED");
+        if (!authHeader.startsWith(Constants.BEARER_PREFIX)) {
+            logger.debug("Invalid authorization header format for path: {}", path);
+            return rejections.reject(exchange, Rejection.INVALID_AUTHORIZATION_FORMAT);
         }
 
-        String token = authHeader.substring(7);
-        logger.debug("Extracted token: {}", token);
-        
-        try {
-            Claims claims = utils.validateToken(token);
-            logger.debug("Token validated successfully. Subject: {}, Role: {}", 
-                claims.getSubject(), claims.get("role", String.class));
-            
-            // Add user details to headers for downstream services
-            ServerHttpRequest modifiedRequest = exchange.getRequest().mutate()
-                .header(Constants.USER_ID_HEADER, claims.getSubject())
-                .header(Constants.USER_ROLE_HEADER, 
-                    claims.get("role", String.class) != null ? 
-                    claims.get("role", String.class) : "USER")
-                .build();
-            
-            return chain.filter(exchange.mutate().request(modifiedRequest).build());
-        } catch (ExpiredJwtException e) {
-            logger.error("JWT token expired: {}", e.getMessage());
-            throw new ApiGatewayException("Token has expired", "UNAUTHORIZED", e);
-        } catch (MalformedJwtException e) {
-            logger.error("JWT token is malformed: {}", e.getMessage());
-            throw new ApiGatewayException("Malformed token", "UNAUTHORIZED", e);
-        } catch (SignatureException e) {
-            logger.error("JWT signature validation failed: {}", e.getMessage());
-            throw new ApiGatewayException("Invalid token signature", "UNAUTHORIZED", e);
-        } catch (UnsupportedJwtException e) {
-            logger.error("Unsupported JWT token: {}", e.getMessage());
-            throw new ApiGatewayException("Unsupported token format", "UNAUTHORIZED", e);
-        } catch (Exception e) {
-            logger.error("Token validation error: {}", e.getMessage(), e);
-            throw new ApiGatewayException("Invalid or expired token", "UNAUTHORIZED", e);
+        if (!ApiGatewayUtils.isCompactJws(authHeader, Constants.BEARER_PREFIX.length())) {
+            logger.debug("JWT token is malformed for path: {}", path);
+            return rejections.reject(exchange, Rejection.MALFORMED_TOKEN);
         }
+
+        // Tokens not verified before have their signature and expiry checked first, so forged and
+        // expired ones, the bulk of a flood, are turned away without the parser throwing on them,
+        // and valid ones are read from the payload that check verified
+        Claims claims = utils.getCachedBearerClaims(authHeader);
+        if (claims == null) {
+            TokenCheck check = utils.checkBearerToken(authHeader);
+            if (check.getRejection() != null) {
+                logger.debug("JWT token rejected for path {}: {}", path, check.getRejection().getReason());
+                return rejections.reject(exchange, check.getRejection());
+            }
+            claims = check.getClaims();
+        }
+        // Left to the parser only when the check could not read the token
+        if (claims == null) {
+            try {
+                claims = utils.parseBearerToken(authHeader);
+            } catch (ExpiredJwtException e) {
+                logger.debug("JWT token expired: {}", e.getMessage());
+                return rejections.reject(exchange, Rejection.TOKEN_EXPIRED);
+            } catch (MalformedJwtException e) {
+                logger.debug("JWT token is malformed: {}", e.getMessage());
+                return rejections.reject(exchange, Rejection.MALFORMED_TOKEN);
+            } catch (SignatureException e) {
+                logger.debug("JWT signature validation failed: {}", e.getMessage());
+                return rejections.reject(exchange, Rejection.INVALID_SIGNATURE);
+            } catch (UnsupportedJwtException e) {
+                logger.debug("Unsupported JWT token: {}", e.getMessage());
+                return rejections.reject(exchange, Rejection.UNSUPPORTED_TOKEN);
+            } catch (JwtException e) {
+                logger.debug("JWT token rejected: {}", e.getMessage());
+                return rejections.reject(exchange, Rejection.INVALID_TOKEN);
+            } catch (Exception e) {
+                // Not a token the parser could classify, worth the stack trace
+                logger.error("Token validation error: {}", e.getMessage(), e);
+                return rejections.reject(exchange, Rejection.INVALID_TOKEN);
+            }
+        }
+
+        String subject = claims.getSubject();
+        String claimedRole = claims.get(Constants.ROLE_CLAIM, String.class);
+        String userRole = claimedRole != null ? claimedRole : Constants.DEFAULT_ROLE;
+        logger.debug("Token validated successfully. Subject: {}, Role: {}", subject, userRole);
+        // Later filters such as the principal rate limit key resolver reuse the verified claims
+        exchange.getAttributes().put(Constants.JWT_CLAIMS_ATTR, claims);
+
+        // Add user details to headers for downstream services, replacing anything the client sent
+        ServerHttpRequest modifiedRequest = request.mutate()
+            .headers(headers -> {
+                headers.set(Constants.USER_ID_HEADER, subject);
+                headers.set(Constants.USER_ROLE_HEADER, userRole);
+            })
+            .build();
+
+        return chain.filter(exchange.mutate().request(modifiedRequest).build());
     }
-    
-    private boolean shouldSkipAuth(String path) {
-        List<String> openApiEndpoints = List.of(
-            "/api/auth/login", 
-            "/api/auth/register", 
-            "/api/auth/token/refresh"
-        );
-        
-        return openApiEndpoints.stream().anyMatch(path::startsWith);
+
+    @Override
+    public int getOrder() {
+        // Authenticate right after request logging, before caching, retries and circuit breaking
+        return -50;
     }
 }
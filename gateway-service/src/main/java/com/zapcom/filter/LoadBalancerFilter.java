@@ -0,0 +1,80 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.loadbalancer.UpstreamBalancer;
+import com.zapcom.loadbalancer.UpstreamInstance;
+import com.zapcom.utils.Constants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+
+/**
+ * Resolves lb://<service> route URIs to one of the service's configured instances and feeds
+ * the outcome of each call back into the balancer.
+ */
+@Component
+public class LoadBalancerFilter implements GlobalFilter, Ordered {
+
+    private static final String LB_SCHEME = "lb";
+
+    @Autowired
+    private UpstreamBalancer balancer;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (url == null || !LB_SCHEME.equals(url.getScheme())) {
+            return chain.filter(exchange);
+        }
+        ServerWebExchangeUtils.addOriginalRequestUrl(exchange, url);
+
+        String service = url.getHost();
+        UpstreamInstance instance = balancer.choose(service);
+        if (instance == null) {
+            return Mono.error(NotFoundException.create(false, "No upstream instances configured for service " + service));
+        }
+
+        URI target = instance.getUri();
+        URI requestUrl = UriComponentsBuilder.fromUri(url)
+            .scheme(target.getScheme())
+            .host(target.getHost())
+            .port(target.getPort())
+            .build(true)
+            .toUri();
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, requestUrl);
+        exchange.getAttributes().put(Constants.UPSTREAM_INSTANCE_ATTR, instance);
+
+        long startNanos = System.nanoTime();
+        instance.start();
+        return chain.filter(exchange)
+            .doFinally(signalType -> {
+                if (signalType == SignalType.CANCEL) {
+                    instance.abandon();
+                    return;
+                }
+                // Completes once the upstream's response headers arrived
+                long latency = System.nanoTime() - startNanos;
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                boolean failed = signalType == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+                instance.complete(failed ? Math.max(latency, balancer.failurePenaltyNanos()) : latency);
+            });
+    }
+
+    @Override
+    public int getOrder() {
+        // Same slot as Spring Cloud's ReactiveLoadBalancerClientFilter: after the route URI is resolved
+        return RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 150;
+    }
+}
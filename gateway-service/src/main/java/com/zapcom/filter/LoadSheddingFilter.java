@@ -0,0 +1,63 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.configuration.LoadSheddingProperties;
+import com.zapcom.limit.LoadShedder;
+import com.zapcom.limit.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Rejects requests whose priority class the {@link LoadShedder} is currently shedding with 503,
+ * before any authentication, caching or upstream work is spent on them.
+ */
+@Component
+public class LoadSheddingFilter implements GlobalFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadSheddingFilter.class);
+
+    @Autowired
+    private LoadSheddingProperties properties;
+
+    @Autowired
+    private LoadShedder shedder;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null) {
+            return chain.filter(exchange);
+        }
+
+        Priority priority = shedder.priorityOf(route.getId(), exchange.getRequest().getMethod());
+        if (!shedder.tryAdmit(priority)) {
+            logger.debug("Shedding {} request on route {} at level {}", priority, route.getId(), shedder.getLevel());
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1L, properties.getRetryAfter().toSeconds())));
+            return response.setComplete();
+        }
+
+        return chain.filter(exchange)
+            .doFinally(signalType -> shedder.release());
+    }
+
+    @Override
+    public int getOrder() {
+        // Straight after route metrics, so shed requests are still measured but cost nothing else
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+}
@@ -0,0 +1,62 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.routing.RouteTable;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Swaps the prefix a route was matched by for the upstream's prefix, what a RewritePath regex
+ * of the form /api/x/(?<segment>.*) -> /x/${segment} does, as a plain string splice. The route
+ * table compiler creates one per route with rewrite-prefix set.
+ */
+public class PrefixRewriteFilter implements GatewayFilter, Ordered {
+
+    private final String prefix;
+
+    private final String replacement;
+
+    public PrefixRewriteFilter(String prefix, String replacement) {
+        this.prefix = prefix;
+        this.replacement = replacement;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String rewritten = rewrite(request.getURI().getRawPath());
+        if (rewritten == null) {
+            return chain.filter(exchange);
+        }
+        ServerWebExchangeUtils.addOriginalRequestUrl(exchange, request.getURI());
+
+        ServerHttpRequest rewrittenRequest = request.mutate().path(rewritten).build();
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, rewrittenRequest.getURI());
+        return chain.filter(exchange.mutate().request(rewrittenRequest).build());
+    }
+
+    // The upstream path for a raw request path, or null when the path is not under the prefix
+    public String rewrite(String path) {
+        if (!RouteTable.covers(prefix, path)) {
+            return null;
+        }
+        String rewritten = replacement + path.substring(prefix.length());
+        return rewritten.isEmpty() ? "/" : rewritten;
+    }
+
+    @Override
+    public int getOrder() {
+        // Where RewritePath used to run, so auth, caching and coalescing still see the client's path
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "[PrefixRewrite " + prefix + " -> " + replacement + "]";
+    }
+}
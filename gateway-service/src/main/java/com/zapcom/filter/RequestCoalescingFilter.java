@@ -0,0 +1,248 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.utils.Constants;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight for GETs: while one request (the leader) is upstream, identical requests from
+ * the same caller wait for its response instead of making their own upstream call. Followers
+ * fall back to a call of their own when the fan-out limit is reached, the wait times out or
+ * the leader's response cannot be shared.
+ */
+@Component
+public class RequestCoalescingFilter implements GatewayFilter, Ordered, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestCoalescingFilter.class);
+
+    // Upstream headers that describe one particular transfer rather than the representation
+    private static final List<String> UNSHARED_HEADERS = List.of(
+        HttpHeaders.CONTENT_LENGTH,
+        HttpHeaders.TRANSFER_ENCODING,
+        HttpHeaders.CONNECTION,
+        HttpHeaders.SET_COOKIE
+    );
+
+    // Emitted to followers when the leader's response cannot be shared
+    private static final SharedResponse NOT_SHARED = new SharedResponse(HttpStatus.OK, HttpHeaders.EMPTY, new byte[0]);
+
+    // Stands in for the leader's response once a follower stops waiting for it
+    private static final SharedResponse TIMED_OUT = new SharedResponse(HttpStatus.OK, HttpHeaders.EMPTY, new byte[0]);
+
+    @Value("${gateway.coalescing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.coalescing.max-followers:64}")
+    private int maxFollowers;
+
+    @Value("${gateway.coalescing.max-wait:2s}")
+    private Duration maxWait;
+
+    @Value("${gateway.coalescing.max-body-size:1MB}")
+    private DataSize maxBodySize;
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder unshared = new LongAdder();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || !HttpMethod.GET.equals(request.getMethod())) {
+            return chain.filter(exchange);
+        }
+
+        String key = flightKey(exchange);
+        Flight flight = new Flight(key);
+        Flight existing = inFlight.putIfAbsent(key, flight);
+
+        if (existing == null) {
+            leaders.increment();
+            LeaderResponse response = new LeaderResponse(exchange.getResponse(), flight);
+            // Whatever ends the leader's exchange without a shareable body releases its followers
+            return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signalType -> flight.complete(NOT_SHARED));
+        }
+
+        if (existing.followers.incrementAndGet() > maxFollowers) {
+            overflowed.increment();
+            logger.debug("Fan-out limit reached for in-flight request {}", key);
+            return chain.filter(exchange);
+        }
+
+        return existing.result.asMono()
+            .timeout(maxWait, Mono.just(TIMED_OUT))
+            .flatMap(response -> {
+                if (response == NOT_SHARED || response == TIMED_OUT) {
+                    (response == TIMED_OUT ? timedOut : unshared).increment();
+                    return chain.filter(exchange);
+                }
+                shared.increment();
+                return writeShared(exchange, response);
+            });
+    }
+
+    @Override
+    public int getOrder() {
+        // After ResponseCacheFilter so only cache misses coalesce, and outside retries and the
+        // CircuitBreaker default filter so followers also share the outcome of those
+        return -30;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("gateway.coalescing.upstream.saved", shared, LongAdder::sum)
+            .description("Upstream calls avoided by answering from an identical in-flight request")
+            .register(registry);
+
+        FunctionCounter.builder("gateway.coalescing.requests", leaders, LongAdder::sum)
+            .tag("result", "leader")
+            .description("GET requests that went upstream on behalf of identical concurrent requests")
+            .register(registry);
+
+        FunctionCounter.builder("gateway.coalescing.requests", shared, LongAdder::sum)
+            .tag("result", "shared")
+            .register(registry);
+
+        FunctionCounter.builder("gateway.coalescing.requests", overflowed, LongAdder::sum)
+            .tag("result", "overflow")
+            .description("Requests sent upstream because the in-flight request had too many followers")
+            .register(registry);
+
+        FunctionCounter.builder("gateway.coalescing.requests", timedOut, LongAdder::sum)
+            .tag("result", "timeout")
+            .description("Requests sent upstream after waiting too long for the in-flight request")
+            .register(registry);
+
+        FunctionCounter.builder("gateway.coalescing.requests", unshared, LongAdder::sum)
+            .tag("result", "unshared")
+            .description("Requests sent upstream because the in-flight response could not be shared")
+            .register(registry);
+
+        Gauge.builder("gateway.coalescing.in.flight", inFlight, Map::size)
+            .description("Distinct GET requests currently being coalesced")
+            .register(registry);
+    }
+
+    private Mono<Void> writeShared(ServerWebExchange exchange, SharedResponse source) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        source.headers.forEach((name, values) -> {
+            // Keep what the gateway already set on this response (e.g. CORS Vary headers)
+            if (!headers.containsKey(name)) {
+                headers.addAll(name, values);
+            }
+        });
+        response.setStatusCode(source.status);
+        headers.setContentLength(source.body.length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(source.body)));
+    }
+
+    private static String flightKey(ServerWebExchange exchange) {
+        // Routes rewrite paths deterministically, so route id and incoming path identify the upstream
+        // request. The identity headers were set by JwtAuthFilter from verified claims.
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        HttpHeaders headers = request.getHeaders();
+        String query = request.getURI().getRawQuery();
+        return (route != null ? route.getId() : "") + ' ' + request.getPath().value()
+            + '?' + (query != null ? query : "")
+            + '|' + headers.getFirst(Constants.USER_ID_HEADER)
+            + '|' + headers.getFirst(Constants.USER_ROLE_HEADER);
+    }
+
+    private static final class SharedResponse {
+        private final HttpStatusCode status;
+        private final HttpHeaders headers;
+        private final byte[] body;
+
+        private SharedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+            this.status = status;
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.body = body;
+        }
+    }
+
+    private final class Flight {
+        private final String key;
+        private final Sinks.One<SharedResponse> result = Sinks.one();
+        private final AtomicInteger followers = new AtomicInteger();
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        private void complete(SharedResponse response) {
+            // Leave the map first so requests arriving from now on start a new flight. Only the
+            // first outcome is emitted, the NOT_SHARED from the leader's doFinally is then ignored.
+            inFlight.remove(key, this);
+            result.tryEmitValue(response);
+        }
+    }
+
+    private final class LeaderResponse extends BodyCapturingResponse {
+
+        private final Flight flight;
+
+        private LeaderResponse(ServerHttpResponse delegate, Flight flight) {
+            super(delegate, maxBodySize.toBytes());
+            this.flight = flight;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (!isShareable()) {
+                return super.writeWith(body);
+            }
+            return writeAndCapture(body);
+        }
+
+        @Override
+        void onBodyCaptured(byte[] body) {
+            HttpStatusCode status = getStatusCode();
+            flight.complete(new SharedResponse(status != null ? status : HttpStatus.OK,
+                copyHeaders(UNSHARED_HEADERS), body));
+        }
+
+        private boolean isShareable() {
+            // A 304 answers the leader's own conditional headers, and cookies stay with one response
+            return !HttpStatus.NOT_MODIFIED.equals(getStatusCode())
+                && !getHeaders().containsKey(HttpHeaders.SET_COOKIE);
+        }
+    }
+}
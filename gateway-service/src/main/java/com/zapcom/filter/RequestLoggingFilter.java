@@ -1,51 +1,71 @@
 
 package com.zapcom.filter;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.zapcom.logging.AccessLogRecord;
+import com.zapcom.logging.AccessLogWriter;
+import com.zapcom.utils.Constants;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.InetSocketAddress;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Component
 public class RequestLoggingFilter implements GatewayFilter, Ordered {
 
-    private static final Logger logger = LoggerFactory.getLogger(RequestLoggingFilter.class);
+    @Autowired
+    private AccessLogWriter accessLogWriter;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
         
+        // Record request start time
+        long startNanos = System.nanoTime();
+        long timestampMillis = System.currentTimeMillis();
+        exchange.getAttributes().put(Constants.REQUEST_START_NANOS_ATTR, startNanos);
+
         // Generate tracking ID for the request
-        String trackingId = UUID.randomUUID().toString();
+        String trackingId = newTrackingId();
         
         // Add tracking ID to request headers
         ServerHttpRequest modifiedRequest = request.mutate()
-            .header("X-Tracking-Id", trackingId)
+            .headers(headers -> headers.set(Constants.TRACKING_ID_HEADER, trackingId))
             .build();
+
+        ByteCountingResponse response = new ByteCountingResponse(exchange.getResponse());
+        ServerWebExchange modifiedExchange = exchange.mutate().request(modifiedRequest).response(response).build();
         
-        // Log request details
-        logger.info("Request: [{}] {} {}, client: {}, headers: {}", 
-            trackingId,
-            request.getMethod(), 
-            request.getURI(), 
-            request.getRemoteAddress(), 
-            request.getHeaders());
-        
-        // Record request start time
-        long startTime = System.currentTimeMillis();
-        
-        return chain.filter(exchange.mutate().request(modifiedRequest).build())
+        return chain.filter(modifiedExchange)
             .doFinally(signalType -> {
-                // Log response time on completion
-                long duration = System.currentTimeMillis() - startTime;
-                logger.info("Response: [{}] completed in {} ms", trackingId, duration);
+                // Hand the record to the background writer, nothing is formatted or written on the event loop
+                long latencyNanos = System.nanoTime() - startNanos;
+                accessLogWriter.submit(new AccessLogRecord(
+                    timestampMillis,
+                    trackingId,
+                    routeId(modifiedExchange),
+                    request.getMethod().name(),
+                    request.getPath().value(),
+                    clientAddress(request),
+                    statusCode(response),
+                    response.bytesWritten,
+                    latencyNanos,
+                    upstreamNanos(modifiedExchange)));
             });
     }
 
@@ -54,4 +74,55 @@ public class RequestLoggingFilter implements GatewayFilter, Ordered {
         // Execute early in the filter chain
         return -100;
     }
+
+    private static String newTrackingId() {
+        // Random enough to correlate log lines, without contending on the SecureRandom behind UUID.randomUUID()
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    private static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : null;
+    }
+
+    private static String clientAddress(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return remoteAddress != null ? remoteAddress.getHostString() : null;
+    }
+
+    private static int statusCode(ServerHttpResponse response) {
+        HttpStatusCode status = response.getStatusCode();
+        return status != null ? status.value() : 0;
+    }
+
+    private static long upstreamNanos(ServerWebExchange exchange) {
+        Long start = exchange.getAttribute(Constants.UPSTREAM_START_NANOS_ATTR);
+        Long end = exchange.getAttribute(Constants.UPSTREAM_END_NANOS_ATTR);
+        return start != null && end != null ? end - start : -1L;
+    }
+
+    private static final class ByteCountingResponse extends ServerHttpResponseDecorator {
+
+        private volatile long bytesWritten;
+
+        private ByteCountingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.from(body).doOnNext(this::count));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body).map(chunk -> Flux.from(chunk).doOnNext(this::count)));
+        }
+
+        private void count(DataBuffer buffer) {
+            // Buffers of one response are emitted sequentially, so a plain read-modify-write is safe
+            bytesWritten += buffer.readableByteCount();
+        }
+    }
 }
@@ -0,0 +1,257 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.cache.CachedResponse;
+import com.zapcom.cache.ResponseCache;
+import com.zapcom.configuration.ResponseCacheProperties;
+import com.zapcom.utils.Constants;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+@Component
+public class ResponseCacheFilter implements GatewayFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCacheFilter.class);
+
+    private static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    // Upstream headers that describe one particular transfer rather than the representation
+    private static final List<String> UNCACHED_HEADERS = List.of(
+        HttpHeaders.CONTENT_LENGTH,
+        HttpHeaders.TRANSFER_ENCODING,
+        HttpHeaders.CONNECTION,
+        HttpHeaders.DATE,
+        HttpHeaders.SET_COOKIE,
+        CACHE_STATUS_HEADER
+    );
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private ResponseCacheProperties properties;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String resource = resourcePath(request);
+
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            if (!HttpMethod.HEAD.equals(request.getMethod()) && !HttpMethod.OPTIONS.equals(request.getMethod())) {
+                // Writes through the route invalidate before forwarding and again once done, so a read
+                // that raced the write cannot leave the old representation behind
+                String tree = properties.getInvalidateTree().get(routeId(exchange));
+                Runnable invalidate = tree != null
+                    ? () -> responseCache.invalidateTree(tree)
+                    : () -> responseCache.invalidate(resource);
+                invalidate.run();
+                return chain.filter(exchange).doFinally(signalType -> invalidate.run());
+            }
+            return chain.filter(exchange);
+        }
+
+        String variant = variant(request);
+        CachedResponse cached = responseCache.get(resource, variant);
+        long now = System.nanoTime();
+
+        if (cached != null && cached.isFresh(now)) {
+            responseCache.recordHit();
+            return writeCached(exchange, cached, "HIT");
+        }
+
+        if (cached != null && isCircuitOpen()) {
+            // Upstream is known to be failing, an older answer beats the generic fallback body
+            responseCache.recordStaleHit();
+            logger.debug("Serving stale response for {} while circuit breaker is open", resource);
+            return writeCached(exchange, cached, "STALE");
+        }
+
+        responseCache.recordMiss();
+        Duration ttl = properties.ttlFor(routeId(exchange));
+        CachingResponse response = new CachingResponse(exchange, resource, variant, ttl);
+        return chain.filter(exchange.mutate().response(response).build());
+    }
+
+    @Override
+    public int getOrder() {
+        // After JwtAuthFilter so entries are keyed by a verified identity, and outside the
+        // CircuitBreaker default filter so stale entries can be served while it is open
+        return -40;
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cached, String cacheStatus) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        cached.getHeaders().forEach((name, values) -> {
+            // Keep what the gateway already set on this response (e.g. CORS Vary headers)
+            if (!headers.containsKey(name)) {
+                headers.addAll(name, values);
+            }
+        });
+        headers.setETag(cached.getEtag());
+        headers.set(CACHE_STATUS_HEADER, cacheStatus);
+
+        if (matchesIfNoneMatch(exchange.getRequest(), cached.getEtag())) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            headers.remove(HttpHeaders.CONTENT_TYPE);
+            return response.setComplete();
+        }
+
+        response.setStatusCode(HttpStatus.OK);
+        headers.setContentLength(cached.getBody().length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(cached.getBody())));
+    }
+
+    private boolean isCircuitOpen() {
+        return circuitBreakerRegistry.find(properties.getCircuitBreaker())
+            .map(circuitBreaker -> {
+                CircuitBreaker.State state = circuitBreaker.getState();
+                return state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN;
+            })
+            .orElse(false);
+    }
+
+    private static boolean matchesIfNoneMatch(ServerHttpRequest request, String etag) {
+        for (String candidate : request.getHeaders().getIfNoneMatch()) {
+            if ("*".equals(candidate) || weakEtag(candidate).equals(weakEtag(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String weakEtag(String etag) {
+        // If-None-Match uses weak comparison, so W/"x" and "x" match
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static String resourcePath(ServerHttpRequest request) {
+        String path = request.getPath().value();
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static String variant(ServerHttpRequest request) {
+        // Responses are per caller: JwtAuthFilter has already replaced these headers with verified claims
+        HttpHeaders headers = request.getHeaders();
+        String query = request.getURI().getRawQuery();
+        return (query != null ? query : "") + '|' + headers.getFirst(Constants.USER_ID_HEADER)
+            + '|' + headers.getFirst(Constants.USER_ROLE_HEADER);
+    }
+
+    private static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "";
+    }
+
+    private final class CachingResponse extends BodyCapturingResponse {
+
+        private final ServerWebExchange exchange;
+        private final String resource;
+        private final String variant;
+        private final Duration ttl;
+
+        private CachingResponse(ServerWebExchange exchange, String resource, String variant, Duration ttl) {
+            super(exchange.getResponse(), properties.getMaxEntrySize().toBytes());
+            this.exchange = exchange;
+            this.resource = resource;
+            this.variant = variant;
+            this.ttl = ttl;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (!isCacheable()) {
+                return super.writeWith(body);
+            }
+            getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+
+            long contentLength = getHeaders().getContentLength();
+            if (contentLength >= 0 && contentLength <= properties.getMaxEntrySize().toBytes()) {
+                // Small and of known size: buffer it so the ETag can go out with this very response
+                return DataBufferUtils.join(body).flatMap(joined -> {
+                    byte[] bytes = new byte[joined.readableByteCount()];
+                    joined.read(bytes);
+                    DataBufferUtils.release(joined);
+
+                    String etag = store(bytes);
+                    getHeaders().setETag(etag);
+                    if (matchesIfNoneMatch(exchange.getRequest(), etag)) {
+                        setStatusCode(HttpStatus.NOT_MODIFIED);
+                        getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                        getHeaders().remove(HttpHeaders.CONTENT_TYPE);
+                        return getDelegate().setComplete();
+                    }
+                    return super.writeWith(Mono.just(bufferFactory().wrap(bytes)));
+                });
+            }
+
+            if (contentLength > properties.getMaxEntrySize().toBytes()) {
+                return super.writeWith(body);
+            }
+
+            // Unknown length: stream through untouched and keep a copy while it still fits in an entry.
+            // The ETag is only sent from the next (cached) response onwards.
+            return writeAndCapture(body);
+        }
+
+        @Override
+        void onBodyCaptured(byte[] body) {
+            store(body);
+        }
+
+        private boolean isCacheable() {
+            if (!HttpStatus.OK.equals(getStatusCode())) {
+                return false;
+            }
+            // The CircuitBreaker filter answers upstream failures from /fallback with a 200, which
+            // must not replace the last good answer that is served while the breaker is open
+            if (exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR) != null) {
+                return false;
+            }
+            HttpHeaders headers = getHeaders();
+            if (headers.containsKey(HttpHeaders.SET_COOKIE)) {
+                return false;
+            }
+            String cacheControl = headers.getCacheControl();
+            return cacheControl == null || !cacheControl.contains("no-store");
+        }
+
+        private String store(byte[] body) {
+            HttpHeaders headers = copyHeaders(UNCACHED_HEADERS);
+            String upstreamEtag = headers.getETag();
+            String etag = upstreamEtag != null ? upstreamEtag : ResponseCache.etag(body);
+
+            long now = System.nanoTime();
+            long freshUntil = now + ttl.toNanos();
+            CachedResponse response = new CachedResponse(headers, body, etag, freshUntil,
+                freshUntil + properties.getStaleTtl().toNanos());
+            responseCache.put(resource, variant, response);
+            return etag;
+        }
+    }
+}
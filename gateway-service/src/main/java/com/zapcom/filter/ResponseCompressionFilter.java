@@ -0,0 +1,269 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.compression.ContentCoding;
+import com.zapcom.compression.DeflateEncoder;
+import com.zapcom.compression.DeflaterPool;
+import com.zapcom.configuration.CompressionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Compresses response bodies with gzip or deflate, whichever the client prefers in
+ * Accept-Encoding. Bodies are compressed as they stream through with Deflaters borrowed
+ * from a pool; bodies below the size threshold and media types that do not compress
+ * well go out unchanged.
+ */
+@Component
+public class ResponseCompressionFilter implements GatewayFilter, Ordered {
+
+    private static final String NO_TRANSFORM = "no-transform";
+
+    @Autowired
+    private CompressionProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<ContentCoding, DeflaterPool> pools = new EnumMap<>(ContentCoding.class);
+
+    private final Map<String, RouteCompression> routes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void createPools() {
+        for (ContentCoding coding : ContentCoding.values()) {
+            DeflaterPool pool = new DeflaterPool(coding, properties.getLevel(), properties.getPoolSize());
+            pools.put(coding, pool);
+
+            Gauge.builder("gateway.compression.deflaters.idle", pool, DeflaterPool::getIdleCount)
+                .tag("encoding", coding.getToken())
+                .description("Deflaters waiting in the pool for the next response")
+                .register(meterRegistry);
+            FunctionCounter.builder("gateway.compression.deflaters.created", pool, DeflaterPool::getCreatedCount)
+                .tag("encoding", coding.getToken())
+                .description("Deflaters allocated because the pool was empty")
+                .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void closePools() {
+        pools.values().forEach(DeflaterPool::close);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null || HttpMethod.HEAD.equals(exchange.getRequest().getMethod())) {
+            return chain.filter(exchange);
+        }
+        ContentCoding coding = ContentCoding.negotiate(
+            exchange.getRequest().getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING));
+        RouteCompression compression = routes.computeIfAbsent(route.getId(), RouteCompression::new);
+        CompressingResponse response = new CompressingResponse(exchange.getResponse(), coding, compression);
+        return chain.filter(exchange.mutate().response(response).build());
+    }
+
+    @Override
+    public int getOrder() {
+        // Outside ResponseCacheFilter and RequestCoalescingFilter, so they keep plain bodies and
+        // whatever they write, cached or shared, is compressed for each client separately
+        return -45;
+    }
+
+    private boolean isCompressible(HttpHeaders headers, HttpStatusCode status) {
+        if (status != null && (status.is1xxInformational() || status.value() == 204 || status.value() == 206
+                || status.value() == 304)) {
+            return false;
+        }
+        if (headers.containsKey(HttpHeaders.CONTENT_ENCODING) || headers.containsKey(HttpHeaders.CONTENT_RANGE)) {
+            return false;
+        }
+        List<String> cacheControl = headers.getOrEmpty(HttpHeaders.CACHE_CONTROL);
+        if (cacheControl.stream().anyMatch(value -> value.contains(NO_TRANSFORM))) {
+            return false;
+        }
+        MediaType contentType = headers.getContentType();
+        return contentType != null
+            && properties.getMimeTypes().stream().anyMatch(type -> type.includes(contentType));
+    }
+
+    private final class CompressingResponse extends ServerHttpResponseDecorator {
+
+        private final ContentCoding coding;
+
+        private final RouteCompression compression;
+
+        private CompressingResponse(ServerHttpResponse delegate, ContentCoding coding, RouteCompression compression) {
+            super(delegate);
+            this.coding = coding;
+            this.compression = compression;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpHeaders headers = getHeaders();
+            if (!isCompressible(headers, getStatusCode())) {
+                return super.writeWith(body);
+            }
+            // Caches between us and the client must not hand one client's encoding to another
+            if (!headers.getVary().contains(HttpHeaders.ACCEPT_ENCODING)) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (coding == null) {
+                compression.notAccepted.increment();
+                return super.writeWith(body);
+            }
+
+            long minSize = properties.getMinSize().toBytes();
+            long length = headers.getContentLength();
+            if (length >= 0) {
+                if (length < minSize) {
+                    compression.tooSmall.increment();
+                    return super.writeWith(body);
+                }
+                return writeCompressed(Flux.from(body));
+            }
+
+            // Unknown length: hold back the first buffers until they reach the threshold or the
+            // body ends, then pass them and everything after on, compressed or not
+            AtomicLong seen = new AtomicLong();
+            return Flux.from(body)
+                .bufferUntil(buffer -> seen.addAndGet(buffer.readableByteCount()) >= minSize)
+                .switchOnFirst((first, lists) -> {
+                    Flux<DataBuffer> buffers = lists.flatMapIterable(Function.identity());
+                    if (first.hasValue() && seen.get() >= minSize) {
+                        return writeCompressed(buffers);
+                    }
+                    compression.tooSmall.increment();
+                    return super.writeWith(buffers);
+                })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .then();
+        }
+
+        private Mono<Void> writeCompressed(Flux<? extends DataBuffer> body) {
+            HttpHeaders headers = getHeaders();
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            headers.set(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+            // The bytes differ from the upstream representation, so its ETag only holds weakly
+            String etag = headers.getETag();
+            if (etag != null && !etag.startsWith("W/")) {
+                headers.setETag("W/" + etag);
+            }
+
+            DeflateEncoder encoder = new DeflateEncoder(pools.get(coding));
+            DataBufferFactory bufferFactory = bufferFactory();
+            Flux<DataBuffer> compressed = body
+                .<DataBuffer>handle((buffer, sink) -> {
+                    DataBuffer output = encoder.encode(buffer, bufferFactory);
+                    if (output.readableByteCount() > 0) {
+                        sink.next(output);
+                    } else {
+                        DataBufferUtils.release(output);
+                    }
+                })
+                .concatWith(Mono.fromSupplier(() -> encoder.finish(bufferFactory)))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .doFinally(signal -> {
+                    encoder.release();
+                    if (signal == SignalType.ON_COMPLETE) {
+                        compression.record(encoder);
+                    }
+                });
+            return super.writeWith(compressed);
+        }
+    }
+
+    private final class RouteCompression {
+        private final Map<ContentCoding, Counter> compressedResponses = new EnumMap<>(ContentCoding.class);
+        private final Counter notAccepted;
+        private final Counter tooSmall;
+        private final Counter original;
+        private final Counter compressed;
+        private final DistributionSummary ratio;
+        private final Timer time;
+        private final String routeId;
+
+        private RouteCompression(String routeId) {
+            this.routeId = routeId;
+            for (ContentCoding coding : ContentCoding.values()) {
+                compressedResponses.put(coding, responses(coding.getToken(), "Responses compressed with the given encoding"));
+            }
+            this.notAccepted = responses("not_accepted", "Compressible responses sent as is because the client accepts neither gzip nor deflate");
+            this.tooSmall = responses("too_small", "Compressible responses sent as is because they were below the size threshold");
+            this.original = bytes("original", "Response bytes before compression");
+            this.compressed = bytes("compressed", "Response bytes after compression");
+            this.ratio = DistributionSummary.builder("gateway.compression.ratio")
+                .tag("route", routeId)
+                .description("Compressed size as a fraction of the original size, per response")
+                .register(meterRegistry);
+            this.time = Timer.builder("gateway.compression.time")
+                .tag("route", routeId)
+                .description("Time spent in zlib per compressed response, which is CPU time on the event loop")
+                .register(meterRegistry);
+        }
+
+        private void record(DeflateEncoder encoder) {
+            compressedResponses.get(encoder.getCoding()).increment();
+            original.increment(encoder.getBytesIn());
+            compressed.increment(encoder.getBytesOut());
+            if (encoder.getBytesIn() > 0) {
+                ratio.record((double) encoder.getBytesOut() / encoder.getBytesIn());
+            }
+            time.record(encoder.getNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        private Counter responses(String result, String description) {
+            return Counter.builder("gateway.compression.responses")
+                .tag("route", routeId)
+                .tag("result", result)
+                .description(description)
+                .register(meterRegistry);
+        }
+
+        private Counter bytes(String stage, String description) {
+            return Counter.builder("gateway.compression.bytes")
+                .tag("route", routeId)
+                .tag("stage", stage)
+                .baseUnit("bytes")
+                .description(description)
+                .register(meterRegistry);
+        }
+    }
+}
@@ -3,7 +3,6 @@ package com.zapcom.filter;
 
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
-import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
 import org.springframework.core.Ordered;
 import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
@@ -15,8 +14,9 @@ public class ResponseTransformFilter implements GatewayFilter, Ordered {
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        return chain.filter(exchange)
-                .then(Mono.fromRunnable(() -> {
+        // Headers are read-only once the response is committed, which happens while the chain
+        // writes the body, so they have to go in just before the commit
+        exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> {
                     // Add common response headers
                     HttpHeaders headers = exchange.getResponse().getHeaders();
                     headers.add("X-Gateway-Version", "1.0.0");
@@ -28,11 +28,14 @@ public class ResponseTransformFilter implements GatewayFilter, Ordered {
                     
                     // CORS headers are handled by the global CORS configuration
                 }));
+        return chain.filter(exchange);
     }
 
     @Override
     public int getOrder() {
-        // Execute just before the NettyWriteResponseFilter
-        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+        // Only registers the hook, so it can run early: ahead of JwtAuthFilter, the response cache
+        // and coalescing, which answer without the rest of the chain and would otherwise go out
+        // without these headers
+        return -60;
     }
 }
@@ -0,0 +1,175 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.configuration.RetryProperties;
+import com.zapcom.limit.RequestBudget;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries idempotent requests that failed with an I/O error or a 5xx answer, but only while
+ * the route's retry budget allows it: successful requests earn a fraction of a retry each,
+ * so during a brownout retries dry up instead of multiplying the load on the upstream.
+ * Retries wait a jittered exponential backoff and are skipped while the circuit breaker
+ * is not closed.
+ */
+@Component
+public class RetryBudgetFilter implements GlobalFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryBudgetFilter.class);
+
+    @Autowired
+    private RetryProperties properties;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, RouteRetries> routes = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null
+                || !properties.getMethods().contains(exchange.getRequest().getMethod())) {
+            return chain.filter(exchange);
+        }
+        return attempt(exchange, chain, routes.computeIfAbsent(route.getId(), RouteRetries::new), 0);
+    }
+
+    @Override
+    public int getOrder() {
+        // Inside the CircuitBreaker default filter, which would otherwise turn every I/O error into
+        // an already written /fallback answer, and inside NettyWriteResponseFilter, so a 5xx answer
+        // can still be retried before its body is written. Ahead of RouteToRequestUrlFilter, so each
+        // retry is load balanced afresh.
+        return RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER - 1;
+    }
+
+    private Mono<Void> attempt(ServerWebExchange exchange, GatewayFilterChain chain, RouteRetries retries, int attempt) {
+        return chain.filter(exchange)
+            .materialize()
+            .flatMap(signal -> {
+                if (signal.isOnError()) {
+                    Throwable error = signal.getThrowable();
+                    return isRetryable(error)
+                        ? retry(exchange, chain, retries, attempt, Mono.error(error))
+                        : Mono.error(error);
+                }
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                if (status != null && status.is5xxServerError()) {
+                    return retry(exchange, chain, retries, attempt, Mono.empty());
+                }
+                // A fallback answer is a failure however it is written, and earns nothing
+                if (exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR) == null) {
+                    retries.budget.deposit();
+                }
+                return Mono.empty();
+            });
+    }
+
+    private Mono<Void> retry(ServerWebExchange exchange, GatewayFilterChain chain, RouteRetries retries,
+                             int attempt, Mono<Void> giveUp) {
+        if (attempt >= properties.getMaxRetries() || exchange.getResponse().isCommitted()) {
+            return giveUp;
+        }
+        if (!isCircuitClosed()) {
+            // An open breaker answers with the fallback anyway, a half-open one needs its few probes
+            retries.circuitOpen.increment();
+            return giveUp;
+        }
+        if (!retries.budget.tryWithdraw()) {
+            retries.exhausted.increment();
+            return giveUp;
+        }
+        retries.sent.increment();
+
+        // Drop the failed response's body before asking again
+        Connection connection = exchange.getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        if (connection != null) {
+            connection.dispose();
+        }
+        ServerWebExchangeUtils.reset(exchange);
+
+        Duration backoff = backoff(attempt + 1);
+        logger.debug("Retrying {} in {}ms (retry {})", exchange.getRequest().getPath(), backoff.toMillis(), attempt + 1);
+        return Mono.delay(backoff).then(attempt(exchange, chain, retries, attempt + 1));
+    }
+
+    private Duration backoff(int retry) {
+        // Full jitter spreads out the retries of requests that failed together
+        long first = properties.getFirstBackoff().toNanos();
+        long cap = Math.min(properties.getMaxBackoff().toNanos(), first << Math.min(20, retry - 1));
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    private boolean isCircuitClosed() {
+        return circuitBreakerRegistry.find(properties.getCircuitBreaker())
+            .map(circuitBreaker -> {
+                CircuitBreaker.State state = circuitBreaker.getState();
+                return state == CircuitBreaker.State.CLOSED || state == CircuitBreaker.State.DISABLED
+                    || state == CircuitBreaker.State.METRICS_ONLY;
+            })
+            .orElse(true);
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class RouteRetries {
+        private final RequestBudget budget = new RequestBudget(properties.getBudgetRatio(), properties.getMaxBudget());
+        private final Counter sent;
+        private final Counter exhausted;
+        private final Counter circuitOpen;
+
+        private RouteRetries(String routeId) {
+            this.sent = register(routeId, "sent", "Retries sent to the upstream");
+            this.exhausted = register(routeId, "budget_exhausted", "Retries skipped because the route's retry budget was spent");
+            this.circuitOpen = register(routeId, "circuit_open", "Retries skipped because the circuit breaker was not closed");
+
+            Gauge.builder("gateway.retry.budget", budget, RequestBudget::getTokens)
+                .tag("route", routeId)
+                .description("Retries the route can currently afford")
+                .register(meterRegistry);
+        }
+
+        private Counter register(String routeId, String result, String description) {
+            return Counter.builder("gateway.retries")
+                .tag("route", routeId)
+                .tag("result", result)
+                .description(description)
+                .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.exception.ApiGatewayException;
+import com.zapcom.utils.Constants;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class RouteMetricsFilter implements GlobalFilter, Ordered {
+
+    private static final String FAILURE_ATTR = RouteMetricsFilter.class.getName() + ".failure";
+
+    // Index is the status class; 0 covers requests that never got a status (e.g. cancelled by the client)
+    private static final String[] STATUS_CLASSES = {"none", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private static final String UNKNOWN_ROUTE = "unknown";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${gateway.metrics.percentiles:0.5,0.99,0.999}")
+    private double[] percentiles;
+
+    private final Map<String, RouteTimers> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long startNanos = System.nanoTime();
+
+        // Defer so filters that throw instead of returning an error signal (e.g. JwtAuthFilter) are measured too
+        return Mono.defer(() -> chain.filter(exchange))
+            .doOnError(error -> exchange.getAttributes().put(FAILURE_ATTR, error))
+            .doFinally(signalType -> record(exchange, System.nanoTime() - startNanos));
+    }
+
+    @Override
+    public int getOrder() {
+        // Execute first so the measurement covers every other filter
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    private void record(ServerWebExchange exchange, long totalNanos) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        // Route ids come from configuration, so tag cardinality is bounded by the route table
+        String routeId = route != null ? route.getId() : UNKNOWN_ROUTE;
+        RouteTimers routeTimers = timers.computeIfAbsent(routeId, RouteTimers::new);
+        int statusClass = statusClass(exchange);
+
+        routeTimers.total(statusClass).record(totalNanos, TimeUnit.NANOSECONDS);
+
+        Long upstreamStart = exchange.getAttribute(Constants.UPSTREAM_START_NANOS_ATTR);
+        Long upstreamEnd = exchange.getAttribute(Constants.UPSTREAM_END_NANOS_ATTR);
+        long upstreamNanos = 0L;
+        if (upstreamStart != null && upstreamEnd != null) {
+            upstreamNanos = upstreamEnd - upstreamStart;
+            routeTimers.upstream(statusClass).record(upstreamNanos, TimeUnit.NANOSECONDS);
+        }
+        // Time spent in the gateway itself: auth, rate limiting, routing and writing the response
+        routeTimers.overhead(statusClass).record(Math.max(0L, totalNanos - upstreamNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private static int statusClass(ServerWebExchange exchange) {
+        Throwable failure = exchange.getAttribute(FAILURE_ATTR);
+        if (failure != null) {
+            // The error handler has not rendered the response yet, classify by what it will send
+            return failure instanceof ApiGatewayException ? 4 : 5;
+        }
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        if (status == null) {
+            return 0;
+        }
+        int statusClass = status.value() / 100;
+        return statusClass >= 1 && statusClass <= 5 ? statusClass : 0;
+    }
+
+    private final class RouteTimers {
+        private final String routeId;
+        private final Timer[] total = new Timer[STATUS_CLASSES.length];
+        private final Timer[] upstream = new Timer[STATUS_CLASSES.length];
+        private final Timer[] overhead = new Timer[STATUS_CLASSES.length];
+
+        private RouteTimers(String routeId) {
+            this.routeId = routeId;
+        }
+
+        private Timer total(int statusClass) {
+            Timer timer = total[statusClass];
+            return timer != null ? timer : (total[statusClass] = register("gateway.route.latency",
+                "End-to-end request latency through the gateway", statusClass));
+        }
+
+        private Timer upstream(int statusClass) {
+            Timer timer = upstream[statusClass];
+            return timer != null ? timer : (upstream[statusClass] = register("gateway.route.upstream",
+                "Time from forwarding the request until the upstream's response headers arrived", statusClass));
+        }
+
+        private Timer overhead(int statusClass) {
+            Timer timer = overhead[statusClass];
+            return timer != null ? timer : (overhead[statusClass] = register("gateway.route.overhead",
+                "Request latency not spent waiting for the upstream", statusClass));
+        }
+
+        private Timer register(String name, String description, int statusClass) {
+            // Racing registrations are harmless, the registry hands back the same meter
+            return Timer.builder(name)
+                .description(description)
+                .tag("route", routeId)
+                .tag("status", STATUS_CLASSES[statusClass])
+                .publishPercentiles(percentiles)
+                .register(meterRegistry);
+        }
+    }
+}
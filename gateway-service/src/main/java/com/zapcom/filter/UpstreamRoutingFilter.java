@@ -0,0 +1,42 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.transport.UpstreamClients;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+
+/**
+ * The gateway's NettyRoutingFilter, sending each request with its route's client from
+ * UpstreamClients so routes can have their own pool and protocol. Registered by
+ * UpstreamTransportConfiguration in place of the stock filter.
+ */
+public class UpstreamRoutingFilter extends NettyRoutingFilter {
+
+    private final UpstreamClients upstreamClients;
+
+    public UpstreamRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+                                 HttpClientProperties properties, UpstreamClients upstreamClients) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.upstreamClients = upstreamClients;
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        HttpClient client = upstreamClients.get(route);
+        // Same per-route connect timeout metadata as the stock filter
+        Object connectTimeout = route.getMetadata().get(RouteMetadataUtils.CONNECT_TIMEOUT_ATTR);
+        if (connectTimeout != null) {
+            return client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.valueOf(connectTimeout.toString()));
+        }
+        return client;
+    }
+}
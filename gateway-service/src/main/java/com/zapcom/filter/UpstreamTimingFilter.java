@@ -0,0 +1,30 @@
+
+package com.zapcom.filter;
+
+import com.zapcom.utils.Constants;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+@Component
+public class UpstreamTimingFilter implements GlobalFilter, Ordered {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        // Everything after this point is the routing filter: connect, send, and wait for the upstream's response headers
+        exchange.getAttributes().put(Constants.UPSTREAM_START_NANOS_ATTR, System.nanoTime());
+        return chain.filter(exchange)
+            .doFinally(signalType ->
+                exchange.getAttributes().put(Constants.UPSTREAM_END_NANOS_ATTR, System.nanoTime()));
+    }
+
+    @Override
+    public int getOrder() {
+        // Execute immediately before the routing filters (HedgingFilter, then NettyRoutingFilter)
+        return NettyRoutingFilter.ORDER - 2;
+    }
+}
@@ -0,0 +1,100 @@
+
+package com.zapcom.limit;
+
+import com.zapcom.configuration.ConcurrencyLimitProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that follows the upstream's latency, in the style of the gradient
+ * algorithm from Netflix's concurrency-limits: while the short-term latency stays close to
+ * the long-term average the limit grows by about sqrt(limit), as latency climbs (requests
+ * start queueing upstream) it shrinks proportionally, and failures back it off outright.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private final ConcurrencyLimitProperties properties;
+
+    private final double shortAlpha;
+
+    private final double longAlpha;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    // Latency averages in nanos, guarded by this
+    private double shortRtt;
+
+    private double longRtt;
+
+    public AdaptiveConcurrencyLimit(ConcurrencyLimitProperties properties) {
+        this.properties = properties;
+        this.shortAlpha = 2.0 / (Math.max(1, properties.getShortWindow()) + 1);
+        this.longAlpha = 2.0 / (Math.max(1, properties.getLongWindow()) + 1);
+        this.limit = clamp(properties.getInitialLimit());
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long rttNanos, boolean dropped) {
+        int concurrency = inFlight.getAndDecrement();
+        update(rttNanos, dropped, concurrency);
+    }
+
+    // The request ended without a meaningful sample, e.g. the client went away
+    public void abandon() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void update(long rttNanos, boolean dropped, int concurrency) {
+        if (longRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+        } else {
+            shortRtt += shortAlpha * (rttNanos - shortRtt);
+            longRtt += longAlpha * (rttNanos - longRtt);
+        }
+
+        if (dropped) {
+            limit = clamp(limit * properties.getBackoffRatio());
+            return;
+        }
+
+        // After a lasting latency drop the long-term average would keep the limit too generous, pull it down faster
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        // Barely used: the latency says nothing about how much more the upstream could take
+        if (concurrency < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, properties.getRttTolerance() * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - properties.getSmoothing()) + newLimit * properties.getSmoothing());
+    }
+
+    private double clamp(double value) {
+        return Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), value));
+    }
+}
@@ -0,0 +1,68 @@
+
+package com.zapcom.limit;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Measures how long tasks wait in the queues of a group of event loops by timing a no-op
+ * task submitted to each. A loop that is busy or blocked runs it late, or not at all.
+ */
+public class EventLoopLagProbe {
+
+    private final List<LoopProbe> probes = new ArrayList<>();
+
+    public EventLoopLagProbe(EventExecutorGroup group) {
+        for (EventExecutor executor : group) {
+            probes.add(new LoopProbe(executor));
+        }
+    }
+
+    // Worst lag across the loops, then probes the loops again; called from a single thread
+    public long sampleNanos() {
+        long now = System.nanoTime();
+        long worst = 0L;
+        for (LoopProbe probe : probes) {
+            worst = Math.max(worst, probe.sample(now));
+        }
+        return worst;
+    }
+
+    private static final class LoopProbe implements Runnable {
+        private final EventExecutor executor;
+        private volatile long submittedAt;
+        private volatile boolean pending;
+        private volatile long lag;
+
+        private LoopProbe(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        private long sample(long now) {
+            if (pending) {
+                // Still queued behind other work, it has been lagging at least this long
+                return now - submittedAt;
+            }
+            long last = lag;
+            submittedAt = now;
+            pending = true;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                pending = false;
+            }
+            return last;
+        }
+
+        @Override
+        public void run() {
+            lag = System.nanoTime() - submittedAt;
+            pending = false;
+        }
+    }
+}
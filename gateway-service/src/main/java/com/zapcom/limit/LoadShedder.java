@@ -0,0 +1,192 @@
+
+package com.zapcom.limit;
+
+import com.zapcom.configuration.LoadSheddingProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.resources.LoopResources;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sheds the least important traffic first when the gateway itself is saturated. Every probe
+ * interval it samples the lag of the server's event loops and the requests in flight; while
+ * either is over its threshold the shedding level rises by one, and it falls back by one after
+ * a recovery interval without overload. Level n rejects the n lowest {@link Priority} classes.
+ */
+@Component
+public class LoadShedder implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadShedder.class);
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    // CRITICAL is never shed
+    private static final int MAX_LEVEL = PRIORITIES.length - 1;
+
+    private static final int MAX_METHODS_PER_ROUTE = 16;
+
+    @Autowired
+    private LoadSheddingProperties properties;
+
+    @Autowired
+    private ReactorResourceFactory resourceFactory;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder[] dropped = new LongAdder[PRIORITIES.length];
+
+    // Route id -> method -> class, resolved from the rules once per pair
+    private final Map<String, Map<HttpMethod, Priority>> priorities = new ConcurrentHashMap<>();
+
+    private volatile int level;
+
+    private volatile long lagNanos;
+
+    private long healthySince;
+
+    private EventLoopLagProbe lagProbe;
+
+    private Disposable controller;
+
+    public LoadShedder() {
+        for (int i = 0; i < dropped.length; i++) {
+            dropped[i] = new LongAdder();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // The loops the HTTP server accepts and handles requests on
+        lagProbe = new EventLoopLagProbe(resourceFactory.getLoopResources().onServer(LoopResources.DEFAULT_NATIVE));
+        healthySince = System.nanoTime();
+        long period = properties.getProbeInterval().toMillis();
+        controller = Schedulers.parallel().schedulePeriodically(this::adjust, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (controller != null) {
+            controller.dispose();
+        }
+    }
+
+    public Priority priorityOf(String routeId, HttpMethod method) {
+        Map<HttpMethod, Priority> byMethod = priorities.computeIfAbsent(routeId, key -> new ConcurrentHashMap<>());
+        Priority priority = byMethod.get(method);
+        if (priority == null) {
+            priority = resolve(routeId, method);
+            // Clients can send any method token, only remember a bounded number of them
+            if (byMethod.size() < MAX_METHODS_PER_ROUTE) {
+                byMethod.put(method, priority);
+            }
+        }
+        return priority;
+    }
+
+    // Admits the request, counting it in flight until release(), unless its class is being shed
+    public boolean tryAdmit(Priority priority) {
+        if (priority.ordinal() > MAX_LEVEL - level) {
+            dropped[priority.ordinal()].increment();
+            return false;
+        }
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getLagNanos() {
+        return lagNanos;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getDropped(Priority priority) {
+        return dropped[priority.ordinal()].sum();
+    }
+
+    public boolean isShedding(Priority priority) {
+        return priority.ordinal() > MAX_LEVEL - level;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("gateway.load.shedding.level", this, LoadShedder::getLevel)
+            .description("Lowest priority classes currently shed, 0 when admitting everything")
+            .register(registry);
+        Gauge.builder("gateway.event.loop.lag", this, shedder -> shedder.getLagNanos() / 1_000_000.0)
+            .baseUnit("milliseconds")
+            .description("Worst event-loop queueing delay at the last probe")
+            .register(registry);
+        Gauge.builder("gateway.load.shedding.in.flight", this, LoadShedder::getInFlight)
+            .description("Admitted requests in flight across all routes")
+            .register(registry);
+        for (Priority priority : PRIORITIES) {
+            FunctionCounter.builder("gateway.load.shed", dropped[priority.ordinal()], LongAdder::sum)
+                .tag("priority", priority.name().toLowerCase())
+                .description("Requests rejected with 503 because their priority class was being shed")
+                .register(registry);
+        }
+    }
+
+    private void adjust() {
+        long now = System.nanoTime();
+        long lag = lagProbe.sampleNanos();
+        lagNanos = lag;
+        int pending = inFlight.get();
+
+        boolean overloaded = lag > properties.getLagThreshold().toNanos()
+            || pending > properties.getPendingThreshold();
+        if (overloaded) {
+            healthySince = now;
+            if (level < MAX_LEVEL) {
+                level++;
+                logger.warn("Shedding raised to level {} (event-loop lag {} ms, {} in flight), rejecting {} and below",
+                    level, TimeUnit.NANOSECONDS.toMillis(lag), pending, PRIORITIES[MAX_LEVEL - level + 1]);
+            }
+        } else if (level > 0 && now - healthySince >= properties.getRecoveryInterval().toNanos()) {
+            healthySince = now;
+            level--;
+            logger.info("Shedding lowered to level {} (event-loop lag {} ms, {} in flight)",
+                level, TimeUnit.NANOSECONDS.toMillis(lag), pending);
+        }
+    }
+
+    private Priority resolve(String routeId, HttpMethod method) {
+        for (LoadSheddingProperties.Rule rule : properties.getPriorities()) {
+            if ((rule.getRoute() == null || rule.getRoute().equals(routeId))
+                    && (rule.getMethods().isEmpty() || rule.getMethods().contains(method.name()))) {
+                return rule.getPriority();
+            }
+        }
+        return properties.getDefaultPriority();
+    }
+}
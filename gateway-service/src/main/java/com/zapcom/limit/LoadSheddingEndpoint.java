@@ -0,0 +1,51 @@
+
+package com.zapcom.limit;
+
+import com.zapcom.configuration.LoadSheddingProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /actuator/loadshedding: the current shedding level, the classes being shed, the signals it
+ * was derived from and requests dropped per class since startup.
+ */
+@Component
+@Endpoint(id = "loadshedding")
+public class LoadSheddingEndpoint {
+
+    @Autowired
+    private LoadShedder shedder;
+
+    @Autowired
+    private LoadSheddingProperties properties;
+
+    @ReadOperation
+    public Map<String, Object> loadShedding() {
+        List<Priority> shedding = new ArrayList<>();
+        Map<String, Long> dropped = new LinkedHashMap<>();
+        for (Priority priority : Priority.values()) {
+            if (shedder.isShedding(priority)) {
+                shedding.add(priority);
+            }
+            dropped.put(priority.name(), shedder.getDropped(priority));
+        }
+
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("enabled", properties.isEnabled());
+        description.put("level", shedder.getLevel());
+        description.put("shedding", shedding);
+        description.put("eventLoopLagMillis", shedder.getLagNanos() / 1_000_000.0);
+        description.put("lagThresholdMillis", properties.getLagThreshold().toMillis());
+        description.put("inFlight", shedder.getInFlight());
+        description.put("pendingThreshold", properties.getPendingThreshold());
+        description.put("dropped", dropped);
+        return description;
+    }
+}
@@ -0,0 +1,13 @@
+
+package com.zapcom.limit;
+
+/**
+ * Load shedding classes, most important first. Shedding level n turns away the n lowest
+ * classes; CRITICAL is never shed.
+ */
+public enum Priority {
+    CRITICAL,
+    HIGH,
+    NORMAL,
+    LOW
+}
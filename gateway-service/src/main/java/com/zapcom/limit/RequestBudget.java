@@ -0,0 +1,56 @@
+
+package com.zapcom.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token budget for extra upstream requests (hedges, retries) expressed as a fraction of the
+ * regular ones: every regular request deposits ratio tokens, every extra request spends a
+ * whole token. The balance is capped, so only recent traffic earns extra requests.
+ */
+public class RequestBudget {
+
+    // Balance in thousandths of a token, so fractional ratios need no floating point state
+    private static final long SCALE = 1000L;
+
+    private final long deposit;
+
+    private final long capacity;
+
+    private final AtomicLong balance;
+
+    public RequestBudget(double ratio, int maxTokens) {
+        this.deposit = Math.max(0L, Math.round(ratio * SCALE));
+        this.capacity = Math.max(1L, maxTokens) * SCALE;
+        // Start full, so a route that has just come up can ride out a blip
+        this.balance = new AtomicLong(capacity);
+    }
+
+    public void deposit() {
+        while (true) {
+            long current = balance.get();
+            if (current >= capacity) {
+                return;
+            }
+            if (balance.compareAndSet(current, Math.min(capacity, current + deposit))) {
+                return;
+            }
+        }
+    }
+
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public double getTokens() {
+        return (double) balance.get() / SCALE;
+    }
+}
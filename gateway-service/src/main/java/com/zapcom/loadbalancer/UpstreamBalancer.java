@@ -0,0 +1,124 @@
+
+package com.zapcom.loadbalancer;
+
+import com.zapcom.configuration.LoadBalancerProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks an upstream instance with power-of-two-choices: two distinct instances are sampled
+ * at random and the one with the lower cost wins, cost being the decayed latency average
+ * weighted by the requests still outstanding on it.
+ */
+@Component
+public class UpstreamBalancer implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamBalancer.class);
+
+    @Autowired
+    private LoadBalancerProperties properties;
+
+    private Map<String, UpstreamInstance[]> services = Map.of();
+
+    @PostConstruct
+    public void initInstances() {
+        long decayNanos = properties.getDecay().toNanos();
+        Map<String, UpstreamInstance[]> instances = new HashMap<>();
+        properties.getServices().forEach((service, uris) -> {
+            instances.put(service, uris.stream()
+                .map(uri -> new UpstreamInstance(service, uri, decayNanos))
+                .toArray(UpstreamInstance[]::new));
+            logger.info("Balancing service {} across {}", service, uris);
+        });
+        services = Map.copyOf(instances);
+    }
+
+    // Returns null when the service has no instances configured
+    public UpstreamInstance choose(String service) {
+        UpstreamInstance[] instances = services.get(service);
+        if (instances == null || instances.length == 0) {
+            return null;
+        }
+        return choose(instances, -1);
+    }
+
+    // Picks an instance of the same service other than the given one, or null when there is none
+    public UpstreamInstance chooseOther(UpstreamInstance excluded) {
+        UpstreamInstance[] instances = services.get(excluded.getService());
+        if (instances == null || instances.length < 2) {
+            return null;
+        }
+        for (int i = 0; i < instances.length; i++) {
+            if (instances[i] == excluded) {
+                return choose(instances, i);
+            }
+        }
+        return choose(instances, -1);
+    }
+
+    private static UpstreamInstance choose(UpstreamInstance[] instances, int excluded) {
+        int candidates = excluded < 0 ? instances.length : instances.length - 1;
+        if (candidates == 1) {
+            return instances[excluded == 0 ? 1 : 0];
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates);
+        int second = random.nextInt(candidates - 1);
+        if (second >= first) {
+            second++;
+        }
+        // Map candidate positions onto the array, skipping the excluded slot
+        if (excluded >= 0) {
+            first = first >= excluded ? first + 1 : first;
+            second = second >= excluded ? second + 1 : second;
+        }
+        long now = System.nanoTime();
+        UpstreamInstance a = instances[first];
+        UpstreamInstance b = instances[second];
+        return a.cost(now) <= b.cost(now) ? a : b;
+    }
+
+    public long failurePenaltyNanos() {
+        return properties.getFailurePenalty().toNanos();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // Instances come from configuration, so tag cardinality is bounded
+        services.forEach((service, instances) -> {
+            for (UpstreamInstance instance : instances) {
+                String address = instance.getUri().getAuthority();
+
+                Gauge.builder("gateway.upstream.outstanding", instance, UpstreamInstance::getOutstanding)
+                    .tags("service", service, "instance", address)
+                    .description("Requests forwarded to the instance that have not been answered yet")
+                    .register(registry);
+
+                TimeGauge.builder("gateway.upstream.latency.average", instance, TimeUnit.NANOSECONDS,
+                        UpstreamInstance::getLatencyNanos)
+                    .tags("service", service, "instance", address)
+                    .description("Decayed average latency the balancer uses to rank the instance")
+                    .register(registry);
+
+                FunctionCounter.builder("gateway.upstream.requests", instance, UpstreamInstance::getRequests)
+                    .tags("service", service, "instance", address)
+                    .description("Requests the balancer sent to the instance")
+                    .register(registry);
+            }
+        });
+    }
+}
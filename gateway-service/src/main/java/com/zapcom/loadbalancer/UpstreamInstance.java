@@ -0,0 +1,90 @@
+
+package com.zapcom.loadbalancer;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One upstream instance with the load the gateway itself has observed on it: requests
+ * currently outstanding and a peak-sensitive, time-decayed average of response latency.
+ */
+public class UpstreamInstance {
+
+    private final String service;
+
+    private final URI uri;
+
+    private final double decayNanos;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final LongAdder requests = new LongAdder();
+
+    // Written under the instance lock, read without it: the balancer only needs a recent value
+    private volatile double latencyNanos;
+
+    private volatile long updatedNanos = System.nanoTime();
+
+    public UpstreamInstance(String service, URI uri, long decayNanos) {
+        this.service = service;
+        this.uri = uri;
+        this.decayNanos = Math.max(1L, decayNanos);
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public double getLatencyNanos() {
+        return decayedLatency(System.nanoTime());
+    }
+
+    public void start() {
+        outstanding.incrementAndGet();
+        requests.increment();
+    }
+
+    public void complete(long latency) {
+        outstanding.decrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            double current = latencyNanos;
+            if (latency > current) {
+                // Jump straight to a new peak so a slowing instance is avoided immediately
+                latencyNanos = latency;
+            } else {
+                double weight = Math.exp(-(now - updatedNanos) / decayNanos);
+                latencyNanos = current * weight + latency * (1 - weight);
+            }
+            updatedNanos = now;
+        }
+    }
+
+    // The request ended without an answer worth measuring, e.g. the client went away
+    public void abandon() {
+        outstanding.decrementAndGet();
+    }
+
+    double cost(long now) {
+        // The +1 keeps outstanding requests significant before any latency has been observed
+        return (decayedLatency(now) + 1) * (outstanding.get() + 1);
+    }
+
+    private double decayedLatency(long now) {
+        // Decays towards zero while the instance is not picked, so a once slow instance gets probed again
+        return latencyNanos * Math.exp(-Math.max(0L, now - updatedNanos) / decayNanos);
+    }
+}
@@ -0,0 +1,71 @@
+
+package com.zapcom.logging;
+
+public final class AccessLogRecord {
+
+    private final long timestampMillis;
+    private final String trackingId;
+    private final String routeId;
+    private final String method;
+    private final String path;
+    private final String clientAddress;
+    private final int status;
+    private final long bytes;
+    private final long latencyNanos;
+    private final long upstreamNanos;
+
+    public AccessLogRecord(long timestampMillis, String trackingId, String routeId, String method, String path,
+                           String clientAddress, int status, long bytes, long latencyNanos, long upstreamNanos) {
+        this.timestampMillis = timestampMillis;
+        this.trackingId = trackingId;
+        this.routeId = routeId;
+        this.method = method;
+        this.path = path;
+        this.clientAddress = clientAddress;
+        this.status = status;
+        this.bytes = bytes;
+        this.latencyNanos = latencyNanos;
+        this.upstreamNanos = upstreamNanos;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getClientAddress() {
+        return clientAddress;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    // -1 when the request never reached an upstream (rejected, short-circuited or failed before routing)
+    public long getUpstreamNanos() {
+        return upstreamNanos;
+    }
+}
@@ -0,0 +1,179 @@
+
+package com.zapcom.logging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class AccessLogWriter implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessLogWriter.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Value("${gateway.access-log.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.access-log.path:logs/access.log}")
+    private Path path;
+
+    @Value("${gateway.access-log.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${gateway.access-log.batch-size:256}")
+    private int batchSize;
+
+    @Value("${gateway.access-log.flush-interval:1s}")
+    private Duration flushInterval;
+
+    private BlockingQueue<AccessLogRecord> buffer;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder writeErrors = new LongAdder();
+
+    private volatile boolean running;
+
+    private Thread writerThread;
+
+    @PostConstruct
+    public void start() throws IOException {
+        buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        if (!enabled) {
+            return;
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        running = true;
+        writerThread = new Thread(this::writeLoop, "access-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Writing access log to {}", path.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // No interrupt: it would close the interruptible file channel mid-write. The writer
+        // notices within one flush interval and drains what is left.
+        running = false;
+        if (writerThread != null) {
+            writerThread.join(flushInterval.toMillis() + TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    // Called on the event loop: never blocks, a full buffer drops the record and counts it instead
+    public void submit(AccessLogRecord record) {
+        if (!enabled) {
+            return;
+        }
+        if (!buffer.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("gateway.access.log.records", written, LongAdder::sum)
+            .tag("result", "written")
+            .description("Access log records written to disk")
+            .register(registry);
+
+        FunctionCounter.builder("gateway.access.log.records", dropped, LongAdder::sum)
+            .tag("result", "dropped")
+            .description("Access log records dropped because the buffer was full")
+            .register(registry);
+
+        FunctionCounter.builder("gateway.access.log.write.errors", writeErrors, LongAdder::sum)
+            .description("Failed access log batch writes")
+            .register(registry);
+
+        Gauge.builder("gateway.access.log.buffer.size", this, writer -> writer.buffer.size())
+            .description("Access log records waiting to be written")
+            .register(registry);
+    }
+
+    private void writeLoop() {
+        List<AccessLogRecord> batch = new ArrayList<>(batchSize);
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+             JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            // One record per line (NDJSON) rather than Jackson's default space-separated root values
+            json.setRootValueSeparator(null);
+
+            while (running || !buffer.isEmpty()) {
+                AccessLogRecord first;
+                try {
+                    first = buffer.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                try {
+                    for (AccessLogRecord record : batch) {
+                        writeRecord(json, record);
+                    }
+                    json.flush();
+                    written.add(batch.size());
+                } catch (IOException e) {
+                    writeErrors.increment();
+                    logger.warn("Failed to write {} access log records: {}", batch.size(), e.getMessage());
+                }
+                batch.clear();
+            }
+        } catch (IOException e) {
+            logger.error("Access log writer stopped: {}", e.getMessage(), e);
+        }
+    }
+
+    private static void writeRecord(JsonGenerator json, AccessLogRecord record) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("timestamp", record.getTimestampMillis());
+        json.writeStringField("trackingId", record.getTrackingId());
+        json.writeStringField("route", record.getRouteId());
+        json.writeStringField("method", record.getMethod());
+        json.writeStringField("path", record.getPath());
+        json.writeStringField("client", record.getClientAddress());
+        json.writeNumberField("status", record.getStatus());
+        json.writeNumberField("bytes", record.getBytes());
+        json.writeNumberField("latencyMicros", TimeUnit.NANOSECONDS.toMicros(record.getLatencyNanos()));
+        if (record.getUpstreamNanos() >= 0) {
+            json.writeNumberField("upstreamMicros", TimeUnit.NANOSECONDS.toMicros(record.getUpstreamNanos()));
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+}
@@ -0,0 +1,220 @@
+
+package com.zapcom.ratelimit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Globally enforced limits without a Redis call per request. Each node leases batches of
+ * tokens from the shared bucket in a {@link TokenLeaseStore}, admits requests from its
+ * lease locally, renews in the background before the lease runs dry and hands unused
+ * tokens back once they have been idle for the lease TTL.
+ *
+ * Tokens are only ever spent after Redis granted them, so the global rate is never
+ * exceeded; leases only shift when they are spent. The burst seen across the fleet can
+ * exceed burstCapacity by at most (nodes x lease size) tokens.
+ */
+public class HybridRateLimiter extends RedisCompatibleRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridRateLimiter.class);
+
+    // Token count of a lease the sweeper has detached; callers holding it must look the key up again
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final TokenLeaseStore leaseStore;
+
+    private final int leaseSize;
+
+    private final double renewThreshold;
+
+    private final Duration leaseTtl;
+
+    private final Map<String, Map<String, Lease>> routes = new ConcurrentHashMap<>();
+
+    private Disposable sweeper;
+
+    public HybridRateLimiter(int defaultReplenishRate, int defaultBurstCapacity, TokenLeaseStore leaseStore,
+                             int leaseSize, double renewThreshold, Duration leaseTtl,
+                             ConfigurationService configurationService) {
+        super(defaultReplenishRate, defaultBurstCapacity, configurationService);
+        this.leaseStore = leaseStore;
+        this.leaseSize = Math.max(1, leaseSize);
+        this.renewThreshold = renewThreshold;
+        this.leaseTtl = leaseTtl;
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        long period = Math.max(1, leaseTtl.toMillis() / 2);
+        sweeper = Schedulers.parallel().schedulePeriodically(this::returnIdleLeases, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+        returnLeasesIdleSince(Long.MAX_VALUE);
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        RedisRateLimiter.Config config = loadConfiguration(routeId);
+        int requestedTokens = config.getRequestedTokens();
+
+        // Same contract as RedisRateLimiter: a zero burst capacity blocks every request
+        if (config.getBurstCapacity() <= 0 || config.getReplenishRate() <= 0) {
+            return Mono.just(new Response(false, getHeaders(config, 0L)));
+        }
+
+        Lease lease;
+        long remaining;
+        do {
+            lease = routes.computeIfAbsent(routeId, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(id, key -> new Lease(leaseKey(routeId, key)));
+            remaining = lease.tryTake(requestedTokens);
+        } while (remaining == RETIRED);
+        if (remaining >= 0) {
+            if (remaining < lowWatermark(config)) {
+                // Renew in the background so the next requests still find tokens locally
+                lease.refill(config).subscribe(null, error -> logger.debug("Background lease renewal failed", error));
+            }
+            return Mono.just(new Response(true, getHeaders(config, remaining)));
+        }
+
+        // Lease ran dry, wait for one batch from the shared bucket (shared by every waiter on this key)
+        Lease dry = lease;
+        return dry.refill(config)
+            .then(Mono.defer(() -> {
+                long left = dry.tryTake(requestedTokens);
+                if (left == RETIRED) {
+                    // Swept while waiting; the granted batch went back to the store, so start over
+                    return isAllowed(routeId, id);
+                }
+                return Mono.just(left >= 0
+                    ? new Response(true, getHeaders(config, left))
+                    : new Response(false, getHeaders(config, 0L)));
+            }))
+            .onErrorResume(error -> {
+                // Fail open on store errors, as RedisRateLimiter does
+                logger.debug("Error leasing rate limiter tokens", error);
+                return Mono.just(new Response(true, getHeaders(config, -1L)));
+            });
+    }
+
+    private int leaseSizeFor(RedisRateLimiter.Config config) {
+        // A lease never exceeds the bucket it is taken from
+        return Math.min(leaseSize, config.getBurstCapacity());
+    }
+
+    private long lowWatermark(RedisRateLimiter.Config config) {
+        return (long) Math.ceil(leaseSizeFor(config) * renewThreshold);
+    }
+
+    private static String leaseKey(String routeId, String id) {
+        // Braces keep both parts in the same Redis Cluster hash slot, like RedisRateLimiter's keys
+        return "gateway_rate_limiter_lease.{" + routeId + "." + id + "}";
+    }
+
+    private void returnIdleLeases() {
+        returnLeasesIdleSince(System.nanoTime() - leaseTtl.toNanos());
+    }
+
+    private void returnLeasesIdleSince(long cutoff) {
+        for (Map.Entry<String, Map<String, Lease>> route : routes.entrySet()) {
+            RedisRateLimiter.Config config = loadConfiguration(route.getKey());
+            for (Map.Entry<String, Lease> entry : route.getValue().entrySet()) {
+                Lease lease = entry.getValue();
+                if (lease.lastUsedNanos - cutoff >= 0 || lease.refilling.get() != null) {
+                    continue;
+                }
+                // Detach first, then retire: whatever a concurrent request took before the retire
+                // is spent, whatever is left is returned, and later takes and refills see RETIRED
+                if (route.getValue().remove(entry.getKey(), lease)) {
+                    release(lease, config, lease.tokens.getAndSet(RETIRED));
+                }
+            }
+        }
+    }
+
+    private void release(Lease lease, RedisRateLimiter.Config config, long unused) {
+        if (unused > 0) {
+            leaseStore.release(lease.key, config.getReplenishRate(), config.getBurstCapacity(), unused)
+                .subscribe(null, error -> logger.debug("Failed to return {} leased tokens", unused, error));
+        }
+    }
+
+    private final class Lease {
+        private final String key;
+        private final AtomicLong tokens = new AtomicLong();
+        private final AtomicReference<Mono<Void>> refilling = new AtomicReference<>();
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private Lease(String key) {
+            this.key = key;
+        }
+
+        // Emits the tokens left after taking, -1 when the lease cannot cover the request, or
+        // RETIRED when the lease has been detached
+        private long tryTake(int requested) {
+            lastUsedNanos = System.nanoTime();
+            while (true) {
+                long available = tokens.get();
+                if (available == RETIRED) {
+                    return RETIRED;
+                }
+                if (available < requested) {
+                    return -1L;
+                }
+                if (tokens.compareAndSet(available, available - requested)) {
+                    return available - requested;
+                }
+            }
+        }
+
+        private Mono<Void> refill(RedisRateLimiter.Config config) {
+            Mono<Void> inFlight = refilling.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            Mono<Void> created = leaseStore
+                .acquire(key, config.getReplenishRate(), config.getBurstCapacity(), leaseSizeFor(config))
+                .doOnNext(granted -> deposit(config, granted))
+                .then()
+                .cache();
+            if (refilling.compareAndSet(null, created)) {
+                return created.doFinally(signal -> refilling.compareAndSet(created, null));
+            }
+            Mono<Void> winner = refilling.get();
+            return winner != null ? winner : created;
+        }
+
+        private void deposit(RedisRateLimiter.Config config, long granted) {
+            while (true) {
+                long available = tokens.get();
+                if (available == RETIRED) {
+                    // Granted after the lease was swept, so nobody can spend it here
+                    release(this, config, granted);
+                    return;
+                }
+                if (tokens.compareAndSet(available, available + granted)) {
+                    return;
+                }
+            }
+        }
+    }
+}
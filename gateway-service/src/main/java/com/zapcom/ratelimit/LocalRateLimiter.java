@@ -0,0 +1,164 @@
+
+package com.zapcom.ratelimit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process token bucket limiter for the RequestRateLimiter filter. Configured like
+ * RedisRateLimiter, but each gateway node enforces its own limits.
+ */
+public class LocalRateLimiter extends RedisCompatibleRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalRateLimiter.class);
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // Marks a bucket that the sweeper has retired, callers holding it must look the key up again
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final int stripes;
+
+    private final Duration idleTimeout;
+
+    private final Map<String, RouteBuckets> routes = new ConcurrentHashMap<>();
+
+    private Disposable sweeper;
+
+    public LocalRateLimiter(int defaultReplenishRate, int defaultBurstCapacity, int stripes,
+                            Duration idleTimeout, ConfigurationService configurationService) {
+        super(defaultReplenishRate, defaultBurstCapacity, configurationService);
+        this.stripes = Integer.highestOneBit(Math.max(1, stripes));
+        this.idleTimeout = idleTimeout;
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        long period = Math.max(1, idleTimeout.toMillis() / 2);
+        sweeper = Schedulers.parallel().schedulePeriodically(this::evictIdleBuckets, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        RedisRateLimiter.Config config = loadConfiguration(routeId);
+        int replenishRate = config.getReplenishRate();
+        int burstCapacity = config.getBurstCapacity();
+        int requestedTokens = config.getRequestedTokens();
+
+        // Same contract as RedisRateLimiter: a zero burst capacity blocks every request
+        if (burstCapacity <= 0 || replenishRate <= 0) {
+            return Mono.just(new Response(false, getHeaders(config, 0L)));
+        }
+
+        long interval = NANOS_PER_SECOND / replenishRate;
+        long capacityWindow = interval * burstCapacity;
+        long cost = interval * requestedTokens;
+        long now = System.nanoTime();
+
+        RouteBuckets buckets = routes.computeIfAbsent(routeId, key -> new RouteBuckets(stripes));
+
+        // GCRA form of the token bucket: each bucket is a single "theoretical arrival time" updated by CAS
+        while (true) {
+            AtomicLong bucket = buckets.bucketFor(id, now - capacityWindow);
+            long tat = bucket.get();
+            if (tat == RETIRED) {
+                continue;
+            }
+
+            long start = Math.max(tat, now - capacityWindow);
+            long next = start + cost;
+            if (next - now > 0) {
+                long remaining = Math.max(0L, (now - start) / interval);
+                return Mono.just(new Response(false, getHeaders(config, remaining)));
+            }
+
+            if (bucket.compareAndSet(tat, next)) {
+                long remaining = (now - next) / interval;
+                return Mono.just(new Response(true, getHeaders(config, remaining)));
+            }
+        }
+    }
+
+    private void evictIdleBuckets() {
+        // A bucket whose arrival time is this far in the past is completely refilled, so
+        // dropping it is indistinguishable from keeping it
+        long cutoff = System.nanoTime() - idleTimeout.toNanos();
+        int evicted = 0;
+        for (Map.Entry<String, RouteBuckets> route : routes.entrySet()) {
+            RedisRateLimiter.Config config = loadConfiguration(route.getKey());
+            long capacityWindow = config.getReplenishRate() > 0
+                ? NANOS_PER_SECOND / config.getReplenishRate() * config.getBurstCapacity()
+                : 0L;
+            evicted += route.getValue().evictOlderThan(cutoff - capacityWindow);
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted {} idle rate limiter buckets", evicted);
+        }
+    }
+
+    private static final class RouteBuckets {
+        private final Stripe[] stripes;
+        private final int mask;
+
+        private RouteBuckets(int stripeCount) {
+            this.stripes = new Stripe[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new Stripe();
+            }
+            this.mask = stripeCount - 1;
+        }
+
+        private AtomicLong bucketFor(String id, long fullTat) {
+            int h = id.hashCode();
+            Map<String, AtomicLong> stripe = stripes[(h ^ (h >>> 16)) & mask].buckets;
+            AtomicLong bucket = stripe.get(id);
+            if (bucket == null || bucket.get() == RETIRED) {
+                bucket = stripe.compute(id, (key, existing) ->
+                    existing == null || existing.get() == RETIRED ? new AtomicLong(fullTat) : existing);
+            }
+            return bucket;
+        }
+
+        private int evictOlderThan(long cutoff) {
+            int evicted = 0;
+            for (Stripe holder : stripes) {
+                Map<String, AtomicLong> stripe = holder.buckets;
+                for (Map.Entry<String, AtomicLong> entry : stripe.entrySet()) {
+                    AtomicLong bucket = entry.getValue();
+                    long tat = bucket.get();
+                    // Retire before removing so a concurrent acquire cannot consume from a detached bucket
+                    if (tat != RETIRED && tat - cutoff < 0 && bucket.compareAndSet(tat, RETIRED)) {
+                        stripe.remove(entry.getKey(), bucket);
+                        evicted++;
+                    }
+                }
+            }
+            return evicted;
+        }
+    }
+
+    // Holder so the stripes can be a typed array rather than a generic array creation
+    private static final class Stripe {
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,48 @@
+
+package com.zapcom.ratelimit;
+
+import com.zapcom.utils.Constants;
+import io.jsonwebtoken.Claims;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Keys rate limits on the caller JwtAuthFilter authenticated, as principal:ROLE:subject, so a
+ * user is limited the same from any address and users sharing a NAT do not share a bucket.
+ * Requests without verified claims, e.g. on open endpoints, fall back to ip:address keys.
+ * {@link TieredRateLimiter} reads the role back out of the key to pick the tier.
+ */
+public class PrincipalKeyResolver implements KeyResolver {
+
+    static final String PRINCIPAL_PREFIX = "principal:";
+
+    static final String IP_PREFIX = "ip:";
+
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        // The claims JwtAuthFilter already verified, the token is never parsed twice
+        Claims claims = exchange.getAttribute(Constants.JWT_CLAIMS_ATTR);
+        if (claims != null && claims.getSubject() != null) {
+            String role = claims.get(Constants.ROLE_CLAIM, String.class);
+            return Mono.just(PRINCIPAL_PREFIX + (role != null ? role : Constants.DEFAULT_ROLE) + ':' + claims.getSubject());
+        }
+
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        String address = remoteAddress != null && remoteAddress.getAddress() != null
+            ? remoteAddress.getAddress().getHostAddress()
+            : "unknown";
+        return Mono.just(IP_PREFIX + address);
+    }
+
+    // The role a principal key was built from, or null for an IP key
+    static String roleOf(String key) {
+        if (!key.startsWith(PRINCIPAL_PREFIX)) {
+            return null;
+        }
+        int end = key.indexOf(':', PRINCIPAL_PREFIX.length());
+        return end < 0 ? null : key.substring(PRINCIPAL_PREFIX.length(), end);
+    }
+}
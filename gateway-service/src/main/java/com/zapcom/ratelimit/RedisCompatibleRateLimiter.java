@@ -0,0 +1,42 @@
+package com.zapcom.ratelimit;
+
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base for limiters that bind the same redis-rate-limiter.* route arguments and answer with the
+ * same headers as RedisRateLimiter, so routes can switch backends without configuration changes.
+ */
+abstract class RedisCompatibleRateLimiter extends AbstractRateLimiter<RedisRateLimiter.Config> {
+
+    private final RedisRateLimiter.Config defaultConfig;
+
+    RedisCompatibleRateLimiter(int defaultReplenishRate, int defaultBurstCapacity,
+                               ConfigurationService configurationService) {
+        super(RedisRateLimiter.Config.class, RedisRateLimiter.CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.defaultConfig = new RedisRateLimiter.Config()
+            .setReplenishRate(defaultReplenishRate)
+            .setBurstCapacity(defaultBurstCapacity);
+    }
+
+    RedisRateLimiter.Config loadConfiguration(String routeId) {
+        RedisRateLimiter.Config routeConfig = getConfig().getOrDefault(routeId, defaultConfig);
+        if (routeConfig == null) {
+            throw new IllegalArgumentException("No Configuration found for route " + routeId);
+        }
+        return routeConfig;
+    }
+
+    public Map<String, String> getHeaders(RedisRateLimiter.Config config, Long tokensLeft) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RedisRateLimiter.REMAINING_HEADER, tokensLeft.toString());
+        headers.put(RedisRateLimiter.REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()));
+        headers.put(RedisRateLimiter.BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()));
+        headers.put(RedisRateLimiter.REQUESTED_TOKENS_HEADER, String.valueOf(config.getRequestedTokens()));
+        return headers;
+    }
+}
@@ -0,0 +1,41 @@
+
+package com.zapcom.ratelimit;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public class RedisTokenLeaseStore implements TokenLeaseStore {
+
+    private static final RedisScript<Long> ACQUIRE_SCRIPT =
+        RedisScript.of(new ClassPathResource("scripts/token_lease_acquire.lua"), Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT =
+        RedisScript.of(new ClassPathResource("scripts/token_lease_release.lua"), Long.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    public RedisTokenLeaseStore(ReactiveStringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public Mono<Long> acquire(String key, int replenishRate, int burstCapacity, long requested) {
+        return redisTemplate.execute(ACQUIRE_SCRIPT, List.of(key), args(replenishRate, burstCapacity, requested))
+            .next()
+            .defaultIfEmpty(0L);
+    }
+
+    @Override
+    public Mono<Void> release(String key, int replenishRate, int burstCapacity, long tokens) {
+        return redisTemplate.execute(RELEASE_SCRIPT, List.of(key), args(replenishRate, burstCapacity, tokens))
+            .then();
+    }
+
+    private static List<String> args(int replenishRate, int burstCapacity, long tokens) {
+        return List.of(String.valueOf(replenishRate), String.valueOf(burstCapacity), String.valueOf(tokens));
+    }
+}
@@ -0,0 +1,72 @@
+
+package com.zapcom.ratelimit;
+
+import com.zapcom.configuration.RateLimiterProperties;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies per-role limits to keys from {@link PrincipalKeyResolver} on top of whichever backend
+ * (redis, local or hybrid) is configured. A principal whose role has a tier is checked against
+ * the tier's replenish rate and burst under a per-route, per-tier configuration id registered with
+ * the backend; other principals and IP keys get the route's own redis-rate-limiter.* limits.
+ */
+public class TieredRateLimiter implements RateLimiter<RedisRateLimiter.Config> {
+
+    private final RateLimiter<RedisRateLimiter.Config> delegate;
+
+    private final Map<String, RedisRateLimiter.Config> tiers = new HashMap<>();
+
+    // Route id -> role -> configuration id the backend knows the tier's limits by
+    private final Map<String, Map<String, String>> tierRoutes = new ConcurrentHashMap<>();
+
+    public TieredRateLimiter(RateLimiter<RedisRateLimiter.Config> delegate, RateLimiterProperties properties) {
+        this.delegate = delegate;
+        properties.getTiers().forEach((role, tier) -> tiers.put(role.toUpperCase(Locale.ROOT), new RedisRateLimiter.Config()
+            .setReplenishRate(tier.getReplenishRate())
+            .setBurstCapacity(tier.getBurstCapacity())
+            .setRequestedTokens(tier.getRequestedTokens())));
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        String role = PrincipalKeyResolver.roleOf(id);
+        if (role == null) {
+            return delegate.isAllowed(routeId, id);
+        }
+        String tierRouteId = tierRoutes.computeIfAbsent(routeId, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(role, key -> register(routeId, key));
+        return delegate.isAllowed(tierRouteId, id);
+    }
+
+    private String register(String routeId, String role) {
+        RedisRateLimiter.Config tier = tiers.get(role.toUpperCase(Locale.ROOT));
+        if (tier == null) {
+            return routeId;
+        }
+        String tierRouteId = routeId + "#" + role;
+        delegate.getConfig().put(tierRouteId, tier);
+        return tierRouteId;
+    }
+
+    @Override
+    public Map<String, RedisRateLimiter.Config> getConfig() {
+        return delegate.getConfig();
+    }
+
+    @Override
+    public Class<RedisRateLimiter.Config> getConfigClass() {
+        return delegate.getConfigClass();
+    }
+
+    @Override
+    public RedisRateLimiter.Config newConfig() {
+        return delegate.newConfig();
+    }
+}
@@ -0,0 +1,16 @@
+
+package com.zapcom.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Shared token bucket that gateway nodes lease batches of tokens from.
+ */
+public interface TokenLeaseStore {
+
+    // Takes up to requested tokens from the bucket and emits how many were granted
+    Mono<Long> acquire(String key, int replenishRate, int burstCapacity, long requested);
+
+    // Puts unused leased tokens back into the bucket
+    Mono<Void> release(String key, int replenishRate, int burstCapacity, long tokens);
+}
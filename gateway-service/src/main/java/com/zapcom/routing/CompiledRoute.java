@@ -0,0 +1,37 @@
+
+package com.zapcom.routing;
+
+import com.zapcom.configuration.RouteTableProperties;
+import org.springframework.cloud.gateway.route.Route;
+
+/**
+ * A route ready to serve: the gateway Route with its filters resolved, and the normalized
+ * prefix it is looked up by.
+ */
+public class CompiledRoute {
+
+    private final String prefix;
+
+    private final Route route;
+
+    private final RouteTableProperties.RouteSpec spec;
+
+    public CompiledRoute(String prefix, Route route, RouteTableProperties.RouteSpec spec) {
+        this.prefix = prefix;
+        this.route = route;
+        this.spec = spec;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public Route getRoute() {
+        return route;
+    }
+
+    // The definition the route was compiled from, as loaded
+    public RouteTableProperties.RouteSpec getSpec() {
+        return spec;
+    }
+}
@@ -0,0 +1,121 @@
+
+package com.zapcom.routing;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of compiled routes, indexed by path prefix in a character trie. A lookup is a
+ * single walk along the request path, so its cost depends on the path length and not on the
+ * number of routes. Reloads build a new table and swap it in whole.
+ */
+public class RouteTable {
+
+    private static final RouteTable EMPTY = new RouteTable(0, "none", List.of());
+
+    private final long version;
+
+    private final String source;
+
+    private final Instant loadedAt;
+
+    private final List<CompiledRoute> routes;
+
+    private final Node root = new Node();
+
+    public RouteTable(long version, String source, List<CompiledRoute> routes) {
+        this.version = version;
+        this.source = source;
+        this.loadedAt = Instant.now();
+        this.routes = List.copyOf(routes);
+        for (CompiledRoute route : this.routes) {
+            Node node = root;
+            String prefix = route.getPrefix();
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.childOrCreate(prefix.charAt(i));
+            }
+            if (node.route != null) {
+                throw new IllegalArgumentException("Routes " + node.route.getRoute().getId() + " and "
+                    + route.getRoute().getId() + " have the same prefix " + prefix);
+            }
+            node.route = route;
+        }
+    }
+
+    public static RouteTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * The route with the longest prefix covering the path, or null. A prefix covers the path
+     * when the path equals it or continues it with a '/', so /api/customers matches
+     * /api/customers/42 but not /api/customersearch.
+     */
+    public CompiledRoute match(String path) {
+        int length = path.length();
+        Node node = root;
+        // The root holds a catch-all "/" route, which covers every path
+        CompiledRoute match = node.route;
+        for (int i = 0; i < length; i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.route != null && (i + 1 == length || path.charAt(i + 1) == '/')) {
+                match = node.route;
+            }
+        }
+        return match;
+    }
+
+    // Same rule as match(), for a single prefix
+    public static boolean covers(String prefix, String path) {
+        return path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == '/');
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    public List<CompiledRoute> getRoutes() {
+        return routes;
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private CompiledRoute route;
+
+        private Node child(char c) {
+            char[] k = keys;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node childOrCreate(char c) {
+            Node existing = child(c);
+            if (existing != null) {
+                return existing;
+            }
+            Node created = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = created;
+            return created;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+
+package com.zapcom.routing;
+
+import com.zapcom.configuration.RouteTableProperties;
+import com.zapcom.filter.PrefixRewriteFilter;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.event.FilterArgsEvent;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns route definitions into gateway Routes. Filters are resolved once here, by the class
+ * name of a GatewayFilter bean (JwtAuthFilter, ...) or by filter factory name with arguments
+ * (RequestRateLimiter, CircuitBreaker, ...) exactly as spring.cloud.gateway.routes binds them.
+ */
+@Component
+public class RouteTableCompiler {
+
+    @Autowired
+    private List<GatewayFilter> gatewayFilters;
+
+    @Autowired
+    private List<GatewayFilterFactory<?>> gatewayFilterFactories;
+
+    @Autowired
+    private ConfigurationService configurationService;
+
+    @Autowired
+    private GatewayProperties gatewayProperties;
+
+    private final Map<String, GatewayFilter> filtersByName = new HashMap<>();
+
+    private final Map<String, GatewayFilterFactory<Object>> factoriesByName = new HashMap<>();
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void indexFilters() {
+        for (GatewayFilter filter : gatewayFilters) {
+            filtersByName.put(ClassUtils.getUserClass(filter).getSimpleName(), filter);
+        }
+        for (GatewayFilterFactory<?> factory : gatewayFilterFactories) {
+            factoriesByName.put(factory.name(), (GatewayFilterFactory<Object>) factory);
+        }
+    }
+
+    /**
+     * Compiles every definition or none: the first invalid one fails the whole set with an
+     * IllegalArgumentException naming the route.
+     */
+    public List<CompiledRoute> compile(List<RouteTableProperties.RouteSpec> specs) {
+        List<CompiledRoute> routes = new ArrayList<>(specs.size());
+        Set<String> ids = new HashSet<>();
+        for (RouteTableProperties.RouteSpec spec : specs) {
+            if (spec.getId() == null || spec.getId().isBlank()) {
+                throw new IllegalArgumentException("Route without an id (prefix " + spec.getPrefix() + ")");
+            }
+            if (!ids.add(spec.getId())) {
+                throw new IllegalArgumentException("Duplicate route id " + spec.getId());
+            }
+            routes.add(compile(spec));
+        }
+        return routes;
+    }
+
+    private CompiledRoute compile(RouteTableProperties.RouteSpec spec) {
+        String id = spec.getId();
+        if (spec.getUri() == null || spec.getUri().getScheme() == null) {
+            throw new IllegalArgumentException("Route " + id + " needs an absolute uri");
+        }
+        String prefix = normalizePrefix(id, spec.getPrefix(), "prefix");
+
+        List<GatewayFilter> filters = new ArrayList<>();
+        if (spec.getRewritePrefix() != null) {
+            filters.add(new PrefixRewriteFilter(prefix, normalizePrefix(id, spec.getRewritePrefix(), "rewrite-prefix")));
+        }
+        List<FilterDefinition> definitions = new ArrayList<>(gatewayProperties.getDefaultFilters());
+        definitions.addAll(spec.getFilters());
+        for (int i = 0; i < definitions.size(); i++) {
+            GatewayFilter filter = resolve(id, definitions.get(i));
+            // Unordered filters keep their position, the same way configured routes order them
+            filters.add(filter instanceof Ordered ? filter : new OrderedGatewayFilter(filter, i + 1));
+        }
+
+        Route route = Route.async()
+            .id(id)
+            .uri(spec.getUri())
+            .predicate(exchange -> RouteTable.covers(prefix, exchange.getRequest().getURI().getRawPath()))
+            .filters(filters)
+            .metadata(spec.getMetadata())
+            .build();
+        return new CompiledRoute(prefix, route, spec);
+    }
+
+    private GatewayFilter resolve(String routeId, FilterDefinition definition) {
+        GatewayFilter filter = filtersByName.get(definition.getName());
+        if (filter != null) {
+            if (!definition.getArgs().isEmpty()) {
+                throw new IllegalArgumentException("Route " + routeId + ": filter " + definition.getName()
+                    + " takes no arguments");
+            }
+            return filter;
+        }
+
+        GatewayFilterFactory<Object> factory = factoriesByName.get(definition.getName());
+        if (factory == null) {
+            throw new IllegalArgumentException("Route " + routeId + ": unknown filter " + definition.getName());
+        }
+        // The event hands route-specific arguments to the components that read them, e.g. rate limiters
+        Object configuration = configurationService.with(factory)
+            .name(definition.getName())
+            .properties(definition.getArgs())
+            .eventFunction((bound, properties) -> new FilterArgsEvent(this, routeId, properties))
+            .bind();
+        if (configuration instanceof HasRouteId hasRouteId) {
+            hasRouteId.setRouteId(routeId);
+        }
+        return factory.apply(configuration);
+    }
+
+    // "/api/customers/" and "/api/customers" are the same prefix; "/" is stored as "" and covers every path
+    private static String normalizePrefix(String routeId, String prefix, String property) {
+        if (prefix == null || !prefix.startsWith("/")) {
+            throw new IllegalArgumentException("Route " + routeId + ": " + property + " must start with '/'");
+        }
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == '/') {
+            end--;
+        }
+        return prefix.substring(0, end);
+    }
+}
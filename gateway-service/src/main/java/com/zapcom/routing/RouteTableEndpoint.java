@@ -0,0 +1,54 @@
+
+package com.zapcom.routing;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/routetable: GET shows the table in force. POST without a body reloads it from the
+ * file or configuration; POST {"definitions": "..."} with a document in the file format (a
+ * top-level routes list, YAML or JSON) replaces it until the next reload. Served on the
+ * management port only (management.server.port), never the gateway's own.
+ */
+@Component
+@Endpoint(id = "routetable")
+public class RouteTableEndpoint {
+
+    @Autowired
+    private RouteTableRegistry registry;
+
+    @ReadOperation
+    public Map<String, Object> routeTable() {
+        return describe(registry.current());
+    }
+
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> reload(@Nullable String definitions) {
+        try {
+            RouteTable table = definitions == null
+                ? registry.reload()
+                : registry.replace(definitions, "actuator");
+            return new WebEndpointResponse<>(describe(table));
+        } catch (IllegalArgumentException e) {
+            return new WebEndpointResponse<>(Map.of("error", e.getMessage(),
+                "version", registry.current().getVersion()), WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+    }
+
+    private static Map<String, Object> describe(RouteTable table) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("version", table.getVersion());
+        description.put("source", table.getSource());
+        description.put("loadedAt", table.getLoadedAt().toString());
+        description.put("routes", table.getRoutes().stream().map(CompiledRoute::getSpec).toList());
+        return description;
+    }
+}
@@ -0,0 +1,41 @@
+
+package com.zapcom.routing;
+
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.web.reactive.handler.AbstractHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Picks the route for a request with one lookup in the compiled route table, where the stock
+ * RoutePredicateHandlerMapping tests every route's predicates in turn. Paths no route covers
+ * fall through to the next handler mapping (the fallback controller, the stock gateway mapping).
+ */
+public final class RouteTableHandlerMapping extends AbstractHandlerMapping {
+
+    private final FilteringWebHandler webHandler;
+
+    private final RouteTableRegistry registry;
+
+    public RouteTableHandlerMapping(FilteringWebHandler webHandler, RouteTableRegistry registry,
+                                    GlobalCorsProperties globalCorsProperties) {
+        this.webHandler = webHandler;
+        this.registry = registry;
+        setCorsConfigurations(globalCorsProperties.getCorsConfigurations());
+        // Ahead of RoutePredicateHandlerMapping (1), which is left without routes of its own
+        setOrder(0);
+    }
+
+    @Override
+    protected Mono<?> getHandlerInternal(ServerWebExchange exchange) {
+        CompiledRoute match = registry.current().match(exchange.getRequest().getURI().getRawPath());
+        if (match == null) {
+            return Mono.empty();
+        }
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_HANDLER_MAPPER_ATTR, getClass().getSimpleName());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, match.getRoute());
+        return Mono.just(webHandler);
+    }
+}
@@ -0,0 +1,178 @@
+
+package com.zapcom.routing;
+
+import com.zapcom.configuration.RouteTableProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holds the route table in force. Definitions come from gateway.route-table.routes, or from
+ * gateway.route-table.file while it exists, which is polled and reloaded when it changes.
+ * A new table is compiled in full before it is swapped in, so a request sees either the old
+ * routes or the new ones, and definitions that fail to compile leave the current table alone.
+ */
+@Component
+public class RouteTableRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteTableRegistry.class);
+
+    private static final String CONFIGURATION_SOURCE = "application configuration";
+
+    @Autowired
+    private RouteTableProperties properties;
+
+    @Autowired
+    private RouteTableCompiler compiler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private volatile RouteTable table = RouteTable.empty();
+
+    // Modification time and size of the file when it was last read, null while there is none
+    private volatile String fileStamp;
+
+    private Counter reloads;
+
+    private Counter failedReloads;
+
+    private Disposable watcher;
+
+    @PostConstruct
+    public void start() {
+        reloads = reloadCounter("success", "Route tables compiled and swapped in");
+        failedReloads = reloadCounter("failure", "Route definitions rejected, the previous table stayed in force");
+        Gauge.builder("gateway.route.table.routes", this, registry -> registry.current().getRoutes().size())
+            .description("Routes in the table in force")
+            .register(meterRegistry);
+        Gauge.builder("gateway.route.table.version", this, registry -> registry.current().getVersion())
+            .description("Version of the table in force, bumped by every successful reload")
+            .register(meterRegistry);
+
+        // Invalid definitions at startup fail the gateway instead of leaving it without routes
+        reload();
+
+        if (properties.getFile() != null) {
+            long period = properties.getWatchInterval().toMillis();
+            watcher = Schedulers.boundedElastic().schedulePeriodically(this::checkFile, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watcher != null) {
+            watcher.dispose();
+        }
+    }
+
+    public RouteTable current() {
+        return table;
+    }
+
+    // Reads the definitions again from the file, or from configuration when there is no file
+    public synchronized RouteTable reload() {
+        Path file = file();
+        if (file != null && Files.exists(file)) {
+            fileStamp = stamp(file);
+            return install(() -> parse(new FileSystemResource(file), file.toString()), file.toString());
+        }
+        fileStamp = null;
+        return install(properties::getRoutes, CONFIGURATION_SOURCE);
+    }
+
+    // Definitions in the file format, in force until the next reload, e.g. when the file changes
+    public synchronized RouteTable replace(String definitions, String source) {
+        return install(() -> parse(new ByteArrayResource(definitions.getBytes(StandardCharsets.UTF_8)), source), source);
+    }
+
+    private RouteTable install(Supplier<List<RouteTableProperties.RouteSpec>> specs, String source) {
+        RouteTable next;
+        try {
+            next = new RouteTable(table.getVersion() + 1, source, compiler.compile(specs.get()));
+        } catch (RuntimeException e) {
+            failedReloads.increment();
+            throw e;
+        }
+        table = next;
+        reloads.increment();
+        logger.info("Route table version {} loaded from {}: {} routes", next.getVersion(), source, next.getRoutes().size());
+        return next;
+    }
+
+    private void checkFile() {
+        Path file = file();
+        try {
+            String stamp = Files.exists(file) ? stamp(file) : null;
+            if (!Objects.equals(stamp, fileStamp)) {
+                reload();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Route table not reloaded from {}, version {} stays in force: {}",
+                file, table.getVersion(), e.getMessage());
+        }
+    }
+
+    private List<RouteTableProperties.RouteSpec> parse(Resource resource, String source) {
+        List<RouteTableProperties.RouteSpec> routes;
+        try {
+            // YAML, which JSON documents are too, bound with the same relaxed rules as application.yml
+            List<PropertySource<?>> sources = new YamlPropertySourceLoader().load(source, resource);
+            routes = new Binder(ConfigurationPropertySources.from(sources))
+                .bind("routes", Bindable.listOf(RouteTableProperties.RouteSpec.class))
+                .orElse(List.of());
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot read route definitions from " + source + ": " + e.getMessage(), e);
+        }
+        // From a file, most likely caught halfway through a write; replace it atomically (write, then rename)
+        if (routes.isEmpty()) {
+            throw new IllegalArgumentException(source + " defines no routes");
+        }
+        return routes;
+    }
+
+    private Path file() {
+        return properties.getFile() != null ? Path.of(properties.getFile()) : null;
+    }
+
+    private static String stamp(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Counter reloadCounter(String result, String description) {
+        return Counter.builder("gateway.route.table.reloads")
+            .tag("result", result)
+            .description(description)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,158 @@
+
+package com.zapcom.transport;
+
+import com.zapcom.configuration.UpstreamTransportProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP clients for upstream calls. A route listed under gateway.upstream-transport gets a
+ * connection pool of its own, optionally speaking prior-knowledge h2c so its requests are
+ * multiplexed over a few connections; other routes share the gateway's default client.
+ * Each client otherwise keeps the spring.cloud.gateway.httpclient settings.
+ */
+@Component
+public class UpstreamClients {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamClients.class);
+
+    private static final String SHARED_POOL = "shared";
+
+    @Autowired
+    private UpstreamTransportProperties properties;
+
+    @Autowired
+    private HttpClient httpClient;
+
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    @Autowired
+    private ServerProperties serverProperties;
+
+    @Autowired
+    private HttpClientSslConfigurer sslConfigurer;
+
+    @Autowired
+    private ObjectProvider<HttpClientCustomizer> customizers;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, RouteClient> routes = new ConcurrentHashMap<>();
+
+    /**
+     * The client for one upstream request on the given route. Returned clients are not
+     * meant to be reused, they time how long the request waits for its connection.
+     */
+    public HttpClient get(Route route) {
+        RouteClient client = routes.computeIfAbsent(route.getId(), this::create);
+        long startNanos = System.nanoTime();
+        return client.httpClient.doOnRequest((request, connection) ->
+            client.acquire.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+    }
+
+    @PreDestroy
+    public void dispose() {
+        routes.values().forEach(client -> {
+            if (client.provider != null) {
+                client.provider.dispose();
+            }
+        });
+    }
+
+    private RouteClient create(String routeId) {
+        UpstreamTransportProperties.Pool pool = properties.getRoutes().get(routeId);
+        if (pool == null) {
+            return new RouteClient(routeId, SHARED_POOL, HttpProtocol.HTTP11, httpClient, null);
+        }
+
+        // Named after the route, which tags the pool's reactor.netty.connection.provider.* meters
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(routeId)
+            .maxConnections(pool.getMaxConnections())
+            .pendingAcquireMaxCount(pool.getMaxPendingAcquires())
+            .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+            .maxIdleTime(pool.getMaxIdleTime())
+            .evictInBackground(pool.getEvictionInterval())
+            .metrics(true);
+        if (pool.getMaxLifeTime() != null) {
+            builder.maxLifeTime(pool.getMaxLifeTime());
+        }
+        if (pool.getProtocol() == HttpProtocol.H2C) {
+            builder.allocationStrategy(Http2AllocationStrategy.builder()
+                .minConnections(1)
+                .maxConnections(pool.getMaxConnections())
+                .maxConcurrentStreams(pool.getMaxConcurrentStreams())
+                .build());
+        }
+        ConnectionProvider provider = builder.build();
+
+        HttpClient client = new RouteHttpClientFactory(httpClientProperties, serverProperties, sslConfigurer,
+            customizers.orderedStream().toList(), provider).build()
+            .protocol(pool.getProtocol());
+        logger.info("Route {} uses its own {} connection pool (max {} connections)", routeId,
+            pool.getProtocol(), pool.getMaxConnections());
+        return new RouteClient(routeId, routeId, pool.getProtocol(), client, provider);
+    }
+
+    // The gateway's own client setup (timeouts, SSL, proxy, customizers) around a route's pool
+    private static final class RouteHttpClientFactory extends HttpClientFactory {
+
+        private final ConnectionProvider provider;
+
+        private RouteHttpClientFactory(HttpClientProperties properties, ServerProperties serverProperties,
+                                       HttpClientSslConfigurer sslConfigurer, List<HttpClientCustomizer> customizers,
+                                       ConnectionProvider provider) {
+            super(properties, serverProperties, sslConfigurer, customizers);
+            this.provider = provider;
+        }
+
+        @Override
+        protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+            return provider;
+        }
+
+        private HttpClient build() {
+            return createInstance();
+        }
+    }
+
+    private final class RouteClient {
+        private final HttpClient httpClient;
+        private final ConnectionProvider provider;
+        private final Timer acquire;
+
+        private RouteClient(String routeId, String pool, HttpProtocol protocol, HttpClient httpClient,
+                            ConnectionProvider provider) {
+            this.httpClient = httpClient;
+            this.provider = provider;
+            this.acquire = Timer.builder("gateway.upstream.pool.acquire")
+                .tag("route", routeId)
+                .tag("pool", pool)
+                .tag("protocol", protocol.name().toLowerCase())
+                .description("Time an upstream request waited for a pooled connection (HTTP/1.1) or stream (h2c)")
+                .register(meterRegistry);
+        }
+    }
+}
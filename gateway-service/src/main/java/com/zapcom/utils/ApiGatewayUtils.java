@@ -1,28 +1,55 @@
 
 package com.zapcom.utils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.zapcom.exception.Rejection;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 @Component
 public class ApiGatewayUtils {
     
     private static final Logger logger = LoggerFactory.getLogger(ApiGatewayUtils.class);
 
+    // Reads a payload into a map of plain JSON values, as the parser's Jackson deserializer does
+    private static final ObjectReader CLAIMS_READER = new ObjectMapper().readerForMapOf(Object.class);
+
+    // Length of an unpadded base64url HS256, HS384 or HS512 signature to its Mac algorithm
+    private static final Map<Integer, String> MAC_ALGORITHMS = Map.of(
+            43, "HmacSHA256",
+            64, "HmacSHA384",
+            86, "HmacSHA512");
+
     @Value("${jwt.secret}")
     private String jwtSecret;
     
     private JwtParser jwtParser;
+
+    // Mac is not thread safe, so keep one per algorithm per event-loop thread
+    private final ThreadLocal<Map<String, Mac>> macs = ThreadLocal.withInitial(HashMap::new);
+
+    @Autowired
+    private ClaimsCache claimsCache;
     
     private SecretKey getSigningKey() {
         logger.debug("Generating signing key from secret (length: {})", jwtSecret.length());
@@ -40,17 +67,142 @@ public class ApiGatewayUtils {
     }
 
     public Claims validateToken(String token) {
+        // Tokens are replayed many times within their lifetime, skip the HMAC check and parse when already verified
+        Claims cached = claimsCache.get(token);
+        if (cached != null) {
+            return cached;
+        }
+        return verifyToken(token);
+    }
+
+    // Validates the token carried by a "Bearer " authorization header, only copying it out on a cache miss
+    public Claims validateBearerToken(String authHeader) {
+        Claims cached = getCachedBearerClaims(authHeader);
+        if (cached != null) {
+            return cached;
+        }
+        return verifyToken(authHeader.substring(Constants.BEARER_PREFIX.length()));
+    }
+
+    // Claims of a bearer token that was already verified, or null
+    public Claims getCachedBearerClaims(String authHeader) {
+        return claimsCache.get(authHeader, Constants.BEARER_PREFIX.length());
+    }
+
+    // Parses a bearer token the cache has not seen, throwing the parser's exception when it is rejected
+    public Claims parseBearerToken(String authHeader) {
+        return parseToken(authHeader.substring(Constants.BEARER_PREFIX.length()));
+    }
+
+    // Claims of a token the cache has not seen. Its signature is checked and its payload read once;
+    // only a token that is turned away, or one the check could not read, goes on to the parser
+    private Claims verifyToken(String token) {
+        Claims claims = checkToken(token).getClaims();
+        return claims != null ? claims : parseToken(token);
+    }
+
+    /**
+     * Checks the HMAC signature and exp of a bearer token in the shape of a compact JWS, ahead of
+     * the parser, which builds an exception with a full stack trace for every token it rejects and
+     * would verify and decode a valid token a second time. Nothing here throws on a token that was
+     * not signed with our key. A token that passes has its claims read from the verified payload
+     * and cached; one whose payload is not plain enough to read is left for the parser.
+     */
+    public TokenCheck checkBearerToken(String authHeader) {
+        return checkToken(authHeader.substring(Constants.BEARER_PREFIX.length()));
+    }
+
+    private TokenCheck checkToken(String token) {
+        int payloadEnd = token.lastIndexOf('.');
+        // Compared encoded, so a signature that is not even valid base64url is never decoded
+        byte[] signature = token.substring(payloadEnd + 1).getBytes(StandardCharsets.US_ASCII);
+        Mac mac = getMac(signature.length);
+        if (mac == null) {
+            return TokenCheck.rejected(Rejection.INVALID_SIGNATURE);
+        }
+        byte[] expected = Base64.getUrlEncoder().withoutPadding()
+                .encode(mac.doFinal(token.substring(0, payloadEnd).getBytes(StandardCharsets.US_ASCII)));
+        if (!MessageDigest.isEqual(expected, signature)) {
+            return TokenCheck.rejected(Rejection.INVALID_SIGNATURE);
+        }
+
+        // Signed with our key, so the payload is our own JSON
+        Map<String, Object> payload;
+        try {
+            payload = CLAIMS_READER.readValue(Base64.getUrlDecoder().decode(token.substring(token.indexOf('.') + 1, payloadEnd)));
+        } catch (IllegalArgumentException | IOException e) {
+            logger.debug("Unreadable payload in a signed token, leaving it to the parser: {}", e.getMessage());
+            return TokenCheck.UNDECIDED;
+        }
+        Object expiration = payload != null ? payload.get(Claims.EXPIRATION) : null;
+        if (payload == null || (expiration != null && !(expiration instanceof Number))
+                || payload.containsKey(Claims.NOT_BEFORE)) {
+            // Not issued by us in this shape, so the parser's own rules apply
+            return TokenCheck.UNDECIDED;
+        }
+        if (expiration != null && ((Number) expiration).longValue() * 1000 < System.currentTimeMillis()) {
+            return TokenCheck.rejected(Rejection.TOKEN_EXPIRED);
+        }
+
+        Claims claims = Jwts.claims(payload);
+        logger.debug("Token validation successful. Subject: {}", claims.getSubject());
+        claimsCache.put(token, claims);
+        return TokenCheck.verified(claims);
+    }
+
+    // The Mac whose signatures encode to the given length, or null when there is none or the key is
+    // too short for it, since the parser refuses such keys and so nothing of ours is signed that way
+    private Mac getMac(int encodedLength) {
+        String algorithm = MAC_ALGORITHMS.get(encodedLength);
+        if (algorithm == null) {
+            return null;
+        }
+        byte[] key = jwtSecret.getBytes(StandardCharsets.UTF_8);
+        if (key.length * 8 < Integer.parseInt(algorithm.substring("HmacSHA".length()))) {
+            return null;
+        }
+        return macs.get().computeIfAbsent(algorithm, name -> {
+            try {
+                Mac mac = Mac.getInstance(name);
+                mac.init(new SecretKeySpec(key, name));
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialize " + name, e);
+            }
+        });
+    }
+
+    // Whether the token starting at offset has the shape of a compact JWS, three non-empty base64url
+    // parts joined by dots, so garbage can be turned away without the parser throwing on it
+    public static boolean isCompactJws(String source, int offset) {
+        int dots = 0;
+        int partLength = 0;
+        for (int i = offset; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                if (partLength == 0 || ++dots > 2) {
+                    return false;
+                }
+                partLength = 0;
+            } else if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '=') {
+                partLength++;
+            } else {
+                return false;
+            }
+        }
+        return dots == 2 && partLength > 0;
+    }
+
+    private Claims parseToken(String token) {
         logger.debug("Validating JWT token");
+        // The parser itself rejects a token whose exp has passed
         Claims claims = getJwtParser()
                 .parseClaimsJws(token)
                 .getBody();
-        
-        if (isTokenExpired(claims)) {
-            logger.warn("Token is expired. Expiration: {}", claims.getExpiration());
-            throw new RuntimeException("JWT token has expired");
-        }
-        
+
         logger.debug("Token validation successful. Subject: {}", claims.getSubject());
+        claimsCache.put(token, claims);
         return claims;
     }
     
@@ -0,0 +1,237 @@
+
+package com.zapcom.utils;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class ClaimsCache implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClaimsCache.class);
+
+    private static final String CACHE_NAME = "jwt-claims";
+
+    private static final int DIGEST_LENGTH = 32;
+
+    // MessageDigest is not thread safe, so keep one digester (and its scratch buffers) per event-loop thread
+    private static final ThreadLocal<Digester> DIGESTER = ThreadLocal.withInitial(Digester::new);
+
+    @Value("${jwt.claims-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${jwt.claims-cache.max-size:10000}")
+    private int maxSize;
+
+    private final Map<DigestKey, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public Claims get(String token) {
+        return get(token, 0);
+    }
+
+    // Looks up the token starting at offset, e.g. straight from an Authorization header, without copying it
+    public Claims get(String source, int offset) {
+        if (!enabled) {
+            return null;
+        }
+
+        DigestKey key = DIGESTER.get().probe(source, offset);
+        Entry entry = key != null ? entries.get(key) : null;
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (entry.isExpired(System.currentTimeMillis())) {
+            // Token passed its exp while cached, drop it and let the parser report the expiry
+            if (entries.remove(key, entry)) {
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.claims;
+    }
+
+    public void put(String token, Claims claims) {
+        if (!enabled) {
+            return;
+        }
+
+        Date expiration = claims.getExpiration();
+        if (expiration == null) {
+            // Without an exp we cannot bound the entry's lifetime, so never cache it
+            return;
+        }
+
+        DigestKey key = DIGESTER.get().probe(token, 0);
+        if (key == null) {
+            return;
+        }
+
+        if (entries.size() >= maxSize) {
+            makeRoom();
+        }
+
+        entries.put(key.copy(), new Entry(claims, expiration.getTime()));
+        puts.increment();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // Follow Micrometer's cache metric conventions so actuator shows them next to any other caches
+        Gauge.builder("cache.size", this, ClaimsCache::size)
+            .tag("cache", CACHE_NAME)
+            .description("The number of entries in the cache")
+            .register(registry);
+
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "hit")
+            .description("The number of times a lookup returned a cached value")
+            .register(registry);
+
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "miss")
+            .description("The number of times a lookup found nothing usable in the cache")
+            .register(registry);
+
+        FunctionCounter.builder("cache.puts", puts, LongAdder::sum)
+            .tag("cache", CACHE_NAME)
+            .description("The number of entries added to the cache")
+            .register(registry);
+
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+            .tag("cache", CACHE_NAME)
+            .description("The number of entries evicted because they expired or the cache was full")
+            .register(registry);
+    }
+
+    private void makeRoom() {
+        long now = System.currentTimeMillis();
+        // Trims a tenth below the limit so a full cache is not scanned again on every put
+        int target = maxSize - maxSize / 10;
+
+        // First reclaim entries whose tokens have already expired, then anything until under the target
+        for (int pass = 0; pass < 2 && entries.size() > target; pass++) {
+            Iterator<Map.Entry<DigestKey, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext() && entries.size() > target) {
+                Entry entry = iterator.next().getValue();
+                if (pass == 1 || entry.isExpired(now)) {
+                    iterator.remove();
+                    evictions.increment();
+                }
+            }
+        }
+
+        logger.debug("Claims cache trimmed to {} entries", entries.size());
+    }
+
+    private static final class Digester {
+        private final MessageDigest sha256;
+        private final DigestKey probe = new DigestKey(new byte[DIGEST_LENGTH]);
+        private byte[] scratch = new byte[512];
+
+        private Digester() {
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        // Key on a digest so raw bearer tokens are never retained in memory by the cache. Null for
+        // anything that is not ASCII, which is never a valid compact JWS and so is not cached.
+        private DigestKey probe(String source, int offset) {
+            int length = source.length() - offset;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            // Only ASCII gets this far, so the narrowing copy is exact
+            for (int i = 0; i < length; i++) {
+                char c = source.charAt(offset + i);
+                if (c > 0x7f) {
+                    return null;
+                }
+                scratch[i] = (byte) c;
+            }
+            sha256.update(scratch, 0, length);
+            try {
+                sha256.digest(probe.bytes, 0, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException("Unable to digest token", e);
+            }
+            probe.rehash();
+            return probe;
+        }
+    }
+
+    private static final class DigestKey {
+        private final byte[] bytes;
+        private int hash;
+
+        private DigestKey(byte[] bytes) {
+            this.bytes = bytes;
+            rehash();
+        }
+
+        private void rehash() {
+            // The digest is already uniformly distributed, its leading bytes make a fine hash code
+            hash = (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+        }
+
+        private DigestKey copy() {
+            return new DigestKey(bytes.clone());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof DigestKey && Arrays.equals(bytes, ((DigestKey) other).bytes);
+        }
+    }
+
+    private static final class Entry {
+        private final Claims claims;
+        private final long expiresAtMillis;
+
+        private Entry(Claims claims, long expiresAtMillis) {
+            this.claims = claims;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAtMillis <= now;
+        }
+    }
+}
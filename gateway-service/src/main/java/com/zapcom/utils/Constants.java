@@ -6,6 +6,18 @@ public class Constants {
     public static final String USER_ID_HEADER = "X-User-Id";
     public static final String USER_ROLE_HEADER = "X-User-Role";
     public static final String TRACKING_ID_HEADER = "X-Tracking-Id";
+    public static final String BEARER_PREFIX = "Bearer ";
+
+    // Claims
+    public static final String ROLE_CLAIM = "role";
+    public static final String DEFAULT_ROLE = "USER";
+    
+    // Exchange attributes
+    public static final String REQUEST_START_NANOS_ATTR = "gateway.requestStartNanos";
+    public static final String UPSTREAM_START_NANOS_ATTR = "gateway.upstreamStartNanos";
+    public static final String UPSTREAM_END_NANOS_ATTR = "gateway.upstreamEndNanos";
+    public static final String UPSTREAM_INSTANCE_ATTR = "gateway.upstreamInstance";
+    public static final String JWT_CLAIMS_ATTR = "gateway.jwtClaims";
     
     // Service names
     public static final String AUTH_SERVICE = "AUTH-SERVICE";
@@ -0,0 +1,53 @@
+
+package com.zapcom.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Percentile over the most recent latency samples. Samples go into a ring buffer and the
+ * percentile is recomputed every eighth of a window, so reading it costs a volatile read.
+ */
+public final class LatencyWindow {
+
+    private final AtomicLongArray samples;
+
+    private final AtomicLong recorded = new AtomicLong();
+
+    private final double percentile;
+
+    private final int recomputeInterval;
+
+    private volatile long percentileNanos;
+
+    public LatencyWindow(int size, double percentile, long initialNanos) {
+        this.samples = new AtomicLongArray(Math.max(8, size));
+        this.percentile = percentile;
+        this.recomputeInterval = this.samples.length() / 8;
+        this.percentileNanos = initialNanos;
+    }
+
+    public void record(long nanos) {
+        long count = recorded.incrementAndGet();
+        samples.lazySet((int) ((count - 1) % samples.length()), nanos);
+        // Keep the initial value until a full window has been seen
+        if (count >= samples.length() && count % recomputeInterval == 0) {
+            recompute();
+        }
+    }
+
+    public long getPercentileNanos() {
+        return percentileNanos;
+    }
+
+    private void recompute() {
+        long[] sorted = new long[samples.length()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        percentileNanos = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
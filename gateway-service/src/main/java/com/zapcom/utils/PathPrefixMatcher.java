@@ -0,0 +1,74 @@
+
+package com.zapcom.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+public final class PathPrefixMatcher {
+
+    private final Node root;
+
+    private PathPrefixMatcher(Node root) {
+        this.root = root;
+    }
+
+    public static PathPrefixMatcher compile(Collection<String> prefixes) {
+        Node root = new Node();
+        for (String prefix : prefixes) {
+            String trimmed = prefix.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < trimmed.length(); i++) {
+                node = node.childOrCreate(trimmed.charAt(i));
+            }
+            node.terminal = true;
+        }
+        return new PathPrefixMatcher(root);
+    }
+
+    // Same semantics as testing path.startsWith(prefix) for every configured prefix, in one walk
+    public boolean matches(CharSequence path) {
+        Node node = root;
+        for (int i = 0; i < path.length(); i++) {
+            if (node.terminal) {
+                return true;
+            }
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        private Node child(char c) {
+            char[] k = keys;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node childOrCreate(char c) {
+            Node existing = child(c);
+            if (existing != null) {
+                return existing;
+            }
+            Node created = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = created;
+            return created;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.zapcom.utils;
+
+import com.zapcom.exception.Rejection;
+import io.jsonwebtoken.Claims;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * What checking a token ahead of the parser found: the claims of a token signed with our key and
+ * not expired, why the token is turned away, or neither, when it is left for the parser to decide.
+ */
+public final class TokenCheck {
+
+    static final TokenCheck UNDECIDED = new TokenCheck(null, null);
+
+    // One per reason, so turning away a flood of tokens allocates nothing
+    private static final Map<Rejection, TokenCheck> REJECTED = new EnumMap<>(Rejection.class);
+
+    static {
+        for (Rejection rejection : Rejection.values()) {
+            REJECTED.put(rejection, new TokenCheck(null, rejection));
+        }
+    }
+
+    private final Claims claims;
+
+    private final Rejection rejection;
+
+    private TokenCheck(Claims claims, Rejection rejection) {
+        this.claims = claims;
+        this.rejection = rejection;
+    }
+
+    static TokenCheck verified(Claims claims) {
+        return new TokenCheck(claims, null);
+    }
+
+    static TokenCheck rejected(Rejection rejection) {
+        return REJECTED.get(rejection);
+    }
+
+    // Claims read from the verified payload, or null
+    public Claims getClaims() {
+        return claims;
+    }
+
+    // Why the token is turned away, or null
+    public Rejection getRejection() {
+        return rejection;
+    }
+}
@@ -0,0 +1,23 @@
+-- Returns ARGV[3] unused leased tokens to the shared bucket, never exceeding its capacity
+local key = KEYS[1]
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local returned = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) + tonumber(time[2]) / 1000000
+
+local state = redis.call('HMGET', key, 'tokens', 'ts')
+if not state[1] then
+  -- The bucket expired, so it is already full
+  return 0
+end
+local tokens = tonumber(state[1])
+local ts = tonumber(state[2]) or now
+
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate + returned)
+
+redis.call('HSET', key, 'tokens', tostring(tokens), 'ts', tostring(now))
+redis.call('EXPIRE', key, math.ceil(capacity / rate) * 2)
+
+return returned
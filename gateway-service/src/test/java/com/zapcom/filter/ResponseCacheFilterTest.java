@@ -0,0 +1,95 @@
+package com.zapcom.filter;
+
+import com.zapcom.cache.ResponseCache;
+import com.zapcom.configuration.ResponseCacheProperties;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheFilterTest {
+
+    private static final String PATH = "/api/customers/42";
+
+    private static final String GOOD_BODY = "{\"id\":\"42\"}";
+
+    private static final String FALLBACK_BODY = "{\"code\":\"SERVICE_UNAVAILABLE\"}";
+
+    private final ResponseCacheFilter filter = new ResponseCacheFilter();
+
+    private final ResponseCache responseCache = new ResponseCache();
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+
+    @BeforeEach
+    void setUp() {
+        ResponseCacheProperties properties = new ResponseCacheProperties();
+        // Entries go stale at once, so every request reaches the upstream while the breaker is closed
+        properties.setDefaultTtl(Duration.ZERO);
+        ReflectionTestUtils.setField(responseCache, "properties", properties);
+        ReflectionTestUtils.setField(filter, "responseCache", responseCache);
+        ReflectionTestUtils.setField(filter, "properties", properties);
+        ReflectionTestUtils.setField(filter, "circuitBreakerRegistry", circuitBreakerRegistry);
+    }
+
+    @Test
+    void failedUpstreamCallDoesNotReplaceCachedEntry() {
+        assertThat(get(upstreamAnswering(GOOD_BODY))).isEqualTo(GOOD_BODY);
+
+        // The caller still gets the fallback answer, but the cache keeps the good one
+        assertThat(get(upstreamFailing())).isEqualTo(FALLBACK_BODY);
+
+        circuitBreakerRegistry.circuitBreaker(new ResponseCacheProperties().getCircuitBreaker())
+            .transitionToForcedOpenState();
+        MockServerWebExchange stale = exchange();
+        filter.filter(stale, upstreamFailing()).block();
+        assertThat(stale.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("STALE");
+        assertThat(stale.getResponse().getBodyAsString().block()).isEqualTo(GOOD_BODY);
+    }
+
+    private String get(GatewayFilterChain chain) {
+        MockServerWebExchange exchange = exchange();
+        filter.filter(exchange, chain).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(PATH));
+    }
+
+    private static GatewayFilterChain upstreamAnswering(String body) {
+        return exchange -> write(exchange.getResponse(), body);
+    }
+
+    // What the CircuitBreaker filter leaves behind when the upstream call fails: the exception it
+    // caught, and a 200 from the /fallback forward
+    private static GatewayFilterChain upstreamFailing() {
+        return exchange -> {
+            exchange.getAttributes().put(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR,
+                new IOException("Connection refused"));
+            return write(exchange.getResponse(), FALLBACK_BODY);
+        };
+    }
+
+    private static Mono<Void> write(ServerHttpResponse response, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().setContentLength(bytes.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+    }
+}
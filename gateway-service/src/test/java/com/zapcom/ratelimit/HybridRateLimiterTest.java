@@ -0,0 +1,149 @@
+package com.zapcom.ratelimit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Several gateway nodes, simulated as HybridRateLimiters sharing one in-memory lease store in
+ * place of Redis.
+ */
+class HybridRateLimiterTest {
+
+    private static final String ROUTE = "customer-service";
+
+    private static final String KEY = "user:alice";
+
+    private final List<HybridRateLimiter> nodes = new ArrayList<>();
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(HybridRateLimiter::stopSweeper);
+    }
+
+    @Test
+    void globalLimitHoldsAcrossNodes() throws InterruptedException {
+        int replenishRate = 50;
+        int burstCapacity = 100;
+        int leaseSize = 10;
+        int nodeCount = 4;
+        InMemoryTokenLeaseStore store = new InMemoryTokenLeaseStore(System::nanoTime);
+        long started = System.nanoTime();
+        startNodes(nodeCount, store, replenishRate, burstCapacity, leaseSize, Duration.ofSeconds(1));
+
+        long admitted = hammer(Duration.ofSeconds(1));
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        assertThat(admitted).isGreaterThanOrEqualTo(burstCapacity);
+        assertThat((double) admitted).isLessThanOrEqualTo(burstCapacity + replenishRate * seconds + nodeCount * leaseSize);
+    }
+
+    @Test
+    void sweptLeasesReturnEveryUnspentToken() throws InterruptedException {
+        int burstCapacity = 1000;
+        // The store's clock stands still, so the bucket never refills and every token is accounted for
+        InMemoryTokenLeaseStore store = new InMemoryTokenLeaseStore(() -> 0L);
+        // A lease TTL this short has the sweeper detaching leases while requests draw on them
+        startNodes(3, store, 1, burstCapacity, 10, Duration.ofMillis(1));
+
+        long admitted = hammer(Duration.ofMillis(500));
+        nodes.forEach(HybridRateLimiter::stopSweeper);
+        // A sweep that was already running when the sweeper was stopped may still be returning leases
+        Thread.sleep(50);
+        nodes.forEach(HybridRateLimiter::stopSweeper);
+
+        assertThat(admitted).isGreaterThan(0);
+        assertThat(admitted + store.available()).isEqualTo(burstCapacity);
+    }
+
+    private void startNodes(int count, TokenLeaseStore store, int replenishRate, int burstCapacity,
+                            int leaseSize, Duration leaseTtl) {
+        for (int i = 0; i < count; i++) {
+            HybridRateLimiter node = new HybridRateLimiter(replenishRate, burstCapacity, store, leaseSize, 0.5, leaseTtl, null);
+            node.startSweeper();
+            nodes.add(node);
+        }
+    }
+
+    // Sends requests for one key to every node from two threads per node, returning how many were admitted
+    private long hammer(Duration duration) throws InterruptedException {
+        AtomicLong admitted = new AtomicLong();
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size() * 2);
+        for (int i = 0; i < nodes.size() * 2; i++) {
+            HybridRateLimiter node = nodes.get(i % nodes.size());
+            executor.execute(() -> {
+                while (System.nanoTime() - deadline < 0) {
+                    if (node.isAllowed(ROUTE, KEY).block().isAllowed()) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(duration.toMillis() + 5000, TimeUnit.MILLISECONDS)).isTrue();
+        return admitted.get();
+    }
+
+    // The token bucket of token_lease_acquire.lua and token_lease_release.lua, kept in memory
+    private static final class InMemoryTokenLeaseStore implements TokenLeaseStore {
+
+        private final LongSupplier clock;
+
+        private final Map<String, double[]> buckets = new HashMap<>();
+
+        private InMemoryTokenLeaseStore(LongSupplier clock) {
+            this.clock = clock;
+        }
+
+        // Lazy like the Redis scripts, which only run once subscribed to
+        @Override
+        public Mono<Long> acquire(String key, int replenishRate, int burstCapacity, long requested) {
+            return Mono.fromSupplier(() -> {
+                synchronized (this) {
+                    double[] bucket = refill(key, replenishRate, burstCapacity);
+                    long granted = Math.min(requested, (long) bucket[0]);
+                    bucket[0] -= granted;
+                    return granted;
+                }
+            });
+        }
+
+        @Override
+        public Mono<Void> release(String key, int replenishRate, int burstCapacity, long tokens) {
+            return Mono.fromRunnable(() -> {
+                synchronized (this) {
+                    double[] bucket = refill(key, replenishRate, burstCapacity);
+                    bucket[0] = Math.min(burstCapacity, bucket[0] + tokens);
+                }
+            });
+        }
+
+        // Tokens left in every bucket together
+        private synchronized long available() {
+            return (long) buckets.values().stream().mapToDouble(bucket -> bucket[0]).sum();
+        }
+
+        // Bucket is {tokens, nanos of the last refill}, starting full
+        private double[] refill(String key, int replenishRate, int burstCapacity) {
+            long now = clock.getAsLong();
+            double[] bucket = buckets.computeIfAbsent(key, k -> new double[] {burstCapacity, now});
+            bucket[0] = Math.min(burstCapacity, bucket[0] + (now - bucket[1]) / 1e9 * replenishRate);
+            bucket[1] = now;
+            return bucket;
+        }
+    }
+}